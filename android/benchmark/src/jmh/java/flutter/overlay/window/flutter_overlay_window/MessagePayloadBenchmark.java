@@ -0,0 +1,95 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.JSONMessageCodec;
+import io.flutter.plugin.common.StandardMessageCodec;
+
+/**
+ * Typical shareData payloads through the embedding's {@link JSONMessageCodec} and
+ * {@link StandardMessageCodec}: what encoding and decoding them costs, and what the native
+ * relay pays to unwrap their envelope. The Dart codecs write the same bytes, so the
+ * payload sizes are those on the channel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessagePayloadBenchmark {
+
+    /** Number of points in the route polyline, 0 for a plain status update. */
+    @Param({"0", "50"})
+    public int routePoints;
+
+    private Map<String, Object> payload;
+    private ByteBuffer json;
+    private ByteBuffer standard;
+    private ByteBuffer jsonEnvelope;
+    private ByteBuffer standardEnvelope;
+
+    @Setup
+    public void setUp() {
+        payload = new LinkedHashMap<>();
+        payload.put("eta", 4);
+        payload.put("status", "arriving");
+        payload.put("driverId", "d-8f2c41");
+        payload.put("lat", 23.8103);
+        payload.put("lng", 90.4125);
+        double[] route = new double[routePoints * 2];
+        for (int i = 0; i < route.length; i++) route[i] = 23.8 + i * 0.0001;
+        payload.put("route", route);
+
+        json = encodeJson();
+        standard = encodeStandard();
+        jsonEnvelope = MessengerEnvelope.wrap(0, "tripRequest", "eta", flipped(json));
+        standardEnvelope = MessengerEnvelope.wrap(1, "tripRequest", "eta", flipped(standard));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeJson() {
+        return JSONMessageCodec.INSTANCE.encodeMessage(payload);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeStandard() {
+        return StandardMessageCodec.INSTANCE.encodeMessage(payload);
+    }
+
+    @Benchmark
+    public Object decodeJson() {
+        return JSONMessageCodec.INSTANCE.decodeMessage(flipped(json));
+    }
+
+    @Benchmark
+    public Object decodeStandard() {
+        return StandardMessageCodec.INSTANCE.decodeMessage(flipped(standard));
+    }
+
+    @Benchmark
+    public MessengerEnvelope relayJson() {
+        return MessengerEnvelope.parse(jsonEnvelope.duplicate());
+    }
+
+    @Benchmark
+    public MessengerEnvelope relayStandard() {
+        return MessengerEnvelope.parse(standardEnvelope.duplicate());
+    }
+
+    /** The codecs return buffers positioned at their end, as the engine expects. */
+    private static ByteBuffer flipped(ByteBuffer encoded) {
+        ByteBuffer buffer = encoded.duplicate();
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,68 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/** Window arithmetic run on every drag frame, snap and rotation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WindowMathBenchmark {
+
+    // Every gravity setGravityFromAlignment produces.
+    private static final int[] GRAVITIES = {
+            WindowMath.GRAVITY_TOP | WindowMath.GRAVITY_LEFT,
+            WindowMath.GRAVITY_TOP | WindowMath.GRAVITY_CENTER_HORIZONTAL,
+            WindowMath.GRAVITY_TOP | WindowMath.GRAVITY_RIGHT,
+            WindowMath.GRAVITY_CENTER_VERTICAL | WindowMath.GRAVITY_CENTER_HORIZONTAL | WindowMath.GRAVITY_LEFT,
+            WindowMath.GRAVITY_CENTER_VERTICAL | WindowMath.GRAVITY_CENTER_HORIZONTAL,
+            WindowMath.GRAVITY_CENTER_VERTICAL | WindowMath.GRAVITY_CENTER_HORIZONTAL | WindowMath.GRAVITY_RIGHT,
+            WindowMath.GRAVITY_BOTTOM | WindowMath.GRAVITY_LEFT,
+            WindowMath.GRAVITY_BOTTOM | WindowMath.GRAVITY_CENTER_HORIZONTAL,
+            WindowMath.GRAVITY_BOTTOM | WindowMath.GRAVITY_RIGHT,
+    };
+    private static final String[] POSITION_GRAVITIES = {"auto", "left", "right", "none"};
+
+    private int[] xs;
+    private int i;
+
+    @Setup
+    public void setUp() {
+        xs = new int[256];
+        for (int k = 0; k < xs.length; k++) xs[k] = (k * 37) % 1080;
+    }
+
+    @Benchmark
+    public void dragSigns(Blackhole bh) {
+        int gravity = GRAVITIES[i++ % GRAVITIES.length];
+        bh.consume(WindowMath.dragSignX(gravity));
+        bh.consume(WindowMath.dragSignY(gravity));
+    }
+
+    @Benchmark
+    public void dpPxRoundTrip(Blackhole bh) {
+        int px = WindowMath.dpToPx(xs[i++ & 255], 2.625f);
+        bh.consume(WindowMath.pxToDp(px, 2.625f));
+    }
+
+    @Benchmark
+    public int snapTarget() {
+        int k = i++;
+        return WindowMath.snapTargetX(POSITION_GRAVITIES[k & 3], xs[k & 255], 180, 1080);
+    }
+
+    @Benchmark
+    public int rotationRescale() {
+        int x = xs[i++ & 255];
+        int scaled = WindowMath.rescale(x, 1080 - 180, 2340 - 180, false, 0);
+        return WindowMath.snapTargetX("auto", scaled, 180, 2340);
+    }
+}
@@ -0,0 +1,106 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Point;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.view.Display;
+import android.view.WindowManager;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Immutable snapshot of the display the overlays are laid out on. {@link OverlayService}
+ * captures one and only replaces it on a configuration or display change, so the show,
+ * move and drag paths never query the display or resources themselves.
+ */
+final class DisplayGeometry {
+
+    private static final int DEFAULT_NAV_BAR_HEIGHT_DP = 48;
+    private static final int DEFAULT_STATUS_BAR_HEIGHT_DP = 25;
+
+    /** Usable window size, without the system bars. */
+    final int widthPx;
+    final int heightPx;
+    /** Full size of the display. */
+    final int realWidthPx;
+    final int realHeightPx;
+    final float density;
+    final int statusBarPx;
+    final int navigationBarPx;
+    final int orientation;
+
+    private DisplayGeometry(int widthPx, int heightPx, int realWidthPx, int realHeightPx, float density,
+                            int statusBarPx, int navigationBarPx, int orientation) {
+        this.widthPx = widthPx;
+        this.heightPx = heightPx;
+        this.realWidthPx = realWidthPx;
+        this.realHeightPx = realHeightPx;
+        this.density = density;
+        this.statusBarPx = statusBarPx;
+        this.navigationBarPx = navigationBarPx;
+        this.orientation = orientation;
+    }
+
+    @NonNull
+    static DisplayGeometry capture(@NonNull Resources resources, @NonNull WindowManager windowManager) {
+        Display display = windowManager.getDefaultDisplay();
+        Point size = new Point();
+        display.getSize(size);
+        DisplayMetrics real = new DisplayMetrics();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            display.getRealMetrics(real);
+        } else {
+            display.getMetrics(real);
+        }
+        float density = resources.getDisplayMetrics().density;
+        return new DisplayGeometry(
+                size.x,
+                size.y,
+                real.widthPixels,
+                real.heightPixels,
+                density,
+                dimension(resources, "status_bar_height", DEFAULT_STATUS_BAR_HEIGHT_DP, density),
+                dimension(resources, "navigation_bar_height", DEFAULT_NAV_BAR_HEIGHT_DP, density),
+                resources.getConfiguration().orientation);
+    }
+
+    private static int dimension(Resources resources, String name, int fallbackDp, float density) {
+        int id = resources.getIdentifier(name, "dimen", "android");
+        return id > 0 ? resources.getDimensionPixelSize(id) : (int) (fallbackDp * density);
+    }
+
+    boolean inPortrait() {
+        return orientation == Configuration.ORIENTATION_PORTRAIT;
+    }
+
+    /** Height of a full-cover overlay. */
+    int screenHeight() {
+        return inPortrait()
+                ? realHeightPx + statusBarPx + navigationBarPx
+                : realHeightPx + statusBarPx;
+    }
+
+    int dpToPx(int dp) {
+        return WindowMath.dpToPx(dp, density);
+    }
+
+    double pxToDp(int px) {
+        return WindowMath.pxToDp(px, density);
+    }
+
+    boolean sameAs(@NonNull DisplayGeometry other) {
+        return widthPx == other.widthPx && heightPx == other.heightPx
+                && realWidthPx == other.realWidthPx && realHeightPx == other.realHeightPx
+                && density == other.density
+                && statusBarPx == other.statusBarPx && navigationBarPx == other.navigationBarPx
+                && orientation == other.orientation;
+    }
+
+    @Override
+    public String toString() {
+        return widthPx + "x" + heightPx + " (real " + realWidthPx + "x" + realHeightPx + ") @" + density
+                + (inPortrait() ? " portrait" : " landscape");
+    }
+}
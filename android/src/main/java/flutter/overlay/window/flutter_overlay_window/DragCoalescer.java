@@ -0,0 +1,108 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.view.Choreographer;
+
+/**
+ * Accumulates drag deltas and hands them to the window at most once per vsync.
+ *
+ * Touch digitizers report faster than the display refreshes, and every
+ * {@code updateViewLayout} is a binder call into the window manager, so moves that
+ * land within the same frame are summed and applied together. Sub-pixel remainders
+ * are carried over instead of being truncated per event.
+ */
+final class DragCoalescer implements Choreographer.FrameCallback {
+
+    interface Sink {
+        void applyDelta(int dx, int dy);
+    }
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final Sink sink;
+
+    private float pendingDx, pendingDy;
+    private boolean scheduled;
+
+    // Per-gesture counters, reset by begin().
+    private int moveEvents;
+    private int historySamples;
+    private int layoutUpdates;
+
+    DragCoalescer(Sink sink) {
+        this.sink = sink;
+    }
+
+    void begin() {
+        cancel();
+        moveEvents = 0;
+        historySamples = 0;
+        layoutUpdates = 0;
+    }
+
+    /**
+     * Queues a move. {@code historySize} is the number of batched samples the event
+     * carried; only the newest position matters for a window move, so they are counted
+     * but not replayed.
+     */
+    void offer(float dx, float dy, int historySize) {
+        pendingDx += dx;
+        pendingDy += dy;
+        moveEvents++;
+        historySamples += historySize;
+        if (!scheduled) {
+            scheduled = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /** Applies whatever is pending right away, e.g. on finger up. */
+    void flush() {
+        if (scheduled) {
+            choreographer.removeFrameCallback(this);
+            scheduled = false;
+        }
+        apply();
+    }
+
+    /** Drops pending movement without applying it. */
+    void cancel() {
+        if (scheduled) {
+            choreographer.removeFrameCallback(this);
+            scheduled = false;
+        }
+        pendingDx = 0;
+        pendingDy = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        apply();
+    }
+
+    private void apply() {
+        int dx = (int) pendingDx;
+        int dy = (int) pendingDy;
+        if (dx == 0 && dy == 0) return;
+        pendingDx -= dx;
+        pendingDy -= dy;
+        layoutUpdates++;
+        sink.applyDelta(dx, dy);
+    }
+
+    int moveEvents() {
+        return moveEvents;
+    }
+
+    int historySamples() {
+        return historySamples;
+    }
+
+    int layoutUpdates() {
+        return layoutUpdates;
+    }
+
+    /** Touch samples (including batched history) that did not get their own layout pass. */
+    int coalescedUpdates() {
+        return Math.max(0, moveEvents + historySamples - layoutUpdates);
+    }
+}
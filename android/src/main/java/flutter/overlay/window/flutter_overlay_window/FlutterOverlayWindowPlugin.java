@@ -16,18 +16,15 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.core.app.NotificationManagerCompat;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
-import io.flutter.FlutterInjector;
 import io.flutter.embedding.engine.FlutterEngine;
-import io.flutter.embedding.engine.FlutterEngineCache;
-import io.flutter.embedding.engine.FlutterEngineGroup;
-import io.flutter.embedding.engine.dart.DartExecutor;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
-import io.flutter.plugin.common.BasicMessageChannel;
-import io.flutter.plugin.common.JSONMessageCodec;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -35,13 +32,16 @@ import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugin.common.PluginRegistry;
 
 public class FlutterOverlayWindowPlugin implements
-        FlutterPlugin, ActivityAware, BasicMessageChannel.MessageHandler, MethodCallHandler,
+        FlutterPlugin, ActivityAware, MethodCallHandler,
         PluginRegistry.ActivityResultListener {
 
+    private static final String TAG = "FlutterOverlayWindowPlugin";
+
     private MethodChannel channel;
     private Context context;
     private Activity mActivity;
-    private BasicMessageChannel<Object> messenger;
+    private BinaryMessenger messenger;
+    private FlutterEngine flutterEngine;
     private Result pendingResult;
     final int REQUEST_CODE_FOR_OVERLAY_PERMISSION = 1248;
 
@@ -51,12 +51,19 @@ public class FlutterOverlayWindowPlugin implements
         channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), OverlayConstants.CHANNEL_TAG);
         channel.setMethodCallHandler(this);
 
-        messenger = new BasicMessageChannel(flutterPluginBinding.getBinaryMessenger(), OverlayConstants.MESSENGER_TAG,
-                JSONMessageCodec.INSTANCE);
-        messenger.setMessageHandler(this);
-
-        WindowSetup.messenger = messenger;
-        WindowSetup.messenger.setMessageHandler(this);
+        // The relay never looks inside shareData payloads, so every codec channel is
+        // forwarded as raw bytes and only the Dart side encodes/decodes.
+        messenger = flutterPluginBinding.getBinaryMessenger();
+        flutterEngine = flutterPluginBinding.getFlutterEngine();
+        for (String tag : OverlayConstants.MESSENGER_TAGS) {
+            messenger.setMessageHandler(tag,
+                    (message, reply) -> relayMessage(tag, WindowSetup.DEFAULT_ID, null, -1, message, reply));
+        }
+        messenger.setMessageHandler(OverlayConstants.MESSENGER_ENVELOPE_TAG, this::relayEnvelope);
+        messenger.setMessageHandler(OverlayConstants.CONTROL_TAG,
+                (message, reply) -> OverlayControl.handle(message, OverlayEngines.overlayIdOf(flutterEngine), reply));
+        messenger.setMessageHandler(OverlayConstants.BUFFERS_TAG,
+                (message, reply) -> SharedBuffers.handle(message, OverlayEngines.overlayIdOf(flutterEngine), reply));
     }
 
     @RequiresApi(api = Build.VERSION_CODES.N)
@@ -85,48 +92,158 @@ public class FlutterOverlayWindowPlugin implements
             String overlayTitle = call.argument("overlayTitle");
             String overlayContent = call.argument("overlayContent");
             String notificationVisibility = call.argument("notificationVisibility");
+            Number notificationMinIntervalMs = call.argument("notificationMinIntervalMs");
+            String overlayId = overlayIdArgument(call);
             boolean enableDrag = call.argument("enableDrag");
             String positionGravity = call.argument("positionGravity");
+            String messengerCodec = call.argument("messengerCodec");
+            String renderMode = call.argument("renderMode");
+            Boolean opaque = call.argument("opaque");
+            Boolean fitContent = call.argument("fitContent");
             Map<String, Integer> startPosition = call.argument("startPosition");
             int startX = startPosition != null ? startPosition.getOrDefault("x", OverlayConstants.DEFAULT_XY) : OverlayConstants.DEFAULT_XY;
             int startY = startPosition != null ? startPosition.getOrDefault("y", OverlayConstants.DEFAULT_XY) : OverlayConstants.DEFAULT_XY;
 
+            // Applied in order with the other window commands; answered once the window is up.
+            OverlayCommands.submitStarting(context, overlayId, r -> {
+                WindowSetup setup = WindowSetup.of(overlayId);
+                setup.width = width != null ? width : -1;
+                setup.height = height != null ? height : -1;
+                setup.enableDrag = enableDrag;
+                setup.setGravityFromAlignment(alignment != null ? alignment : "center");
+                setup.setFlag(flag != null ? flag : "flagNotFocusable");
+                setup.positionGravity = positionGravity;
+                setup.setMessengerCodec(messengerCodec);
+                setup.setRenderMode(renderMode);
+                setup.opaque = opaque != null && opaque;
+                setup.fitContent = fitContent != null && fitContent;
+                WindowSetup.overlayTitle = overlayTitle;
+                WindowSetup.overlayContent = overlayContent == null ? "" : overlayContent;
+                WindowSetup.setNotificationVisibility(notificationVisibility);
+                WindowSetup.notificationMinIntervalMs =
+                        notificationMinIntervalMs != null ? Math.max(0, notificationMinIntervalMs.longValue()) : 0;
 
-            WindowSetup.width = width != null ? width : -1;
-            WindowSetup.height = height != null ? height : -1;
-            WindowSetup.enableDrag = enableDrag;
-            WindowSetup.setGravityFromAlignment(alignment != null ? alignment : "center");
-            WindowSetup.setFlag(flag != null ? flag : "flagNotFocusable");
-            WindowSetup.overlayTitle = overlayTitle;
-            WindowSetup.overlayContent = overlayContent == null ? "" : overlayContent;
-            WindowSetup.positionGravity = positionGravity;
-            WindowSetup.setNotificationVisibility(notificationVisibility);
-
-            final Intent intent = new Intent(context, OverlayService.class);
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
-            intent.putExtra("startX", startX);
-            intent.putExtra("startY", startY);
-            context.startService(intent);
-            result.success(null);
+                OverlayService.show(overlayId, startX, startY);
+                r.success(null);
+            }, result);
         } else if (call.method.equals("isOverlayActive")) {
-            result.success(OverlayService.isRunning);
-            return;
-        } else if (call.method.equals("isOverlayActive")) {
-            result.success(OverlayService.isRunning);
+            String overlayId = call.argument("overlayId");
+            OverlayCommands.submit(null, overlayId, r ->
+                    r.success(overlayId == null ? OverlayService.isRunning : OverlayService.isActive(overlayId)),
+                    result, false);
             return;
         } else if (call.method.equals("moveOverlay")) {
+            String overlayId = overlayIdArgument(call);
             int x = call.argument("x");
             int y = call.argument("y");
-            result.success(OverlayService.moveOverlay(x, y));
+            Number duration = call.argument("duration");
+            double[] curve = call.argument("curve");
+            OverlayCommands.submit(OverlayCommands.KIND_MOVE, overlayId, r -> {
+                if (duration != null && duration.longValue() > 0) {
+                    OverlayService.animateOverlay(overlayId, x, y, null, null, duration.longValue(), curve, r);
+                } else {
+                    r.success(OverlayService.moveOverlay(overlayId, x, y));
+                }
+            }, result, false);
+        } else if (call.method.equals("resizeOverlay")) {
+            String overlayId = overlayIdArgument(call);
+            Integer w = call.argument("width");
+            Integer h = call.argument("height");
+            Boolean drag = call.argument("enableDrag");
+            Number duration = call.argument("duration");
+            double[] curve = call.argument("curve");
+            OverlayCommands.submit(OverlayCommands.KIND_RESIZE, overlayId, r -> {
+                if (duration != null && duration.longValue() > 0) {
+                    WindowSetup.of(overlayId).enableDrag = drag != null && drag;
+                    OverlayService.animateOverlay(overlayId, null, null, w == null ? -1 : w, h == null ? -1 : h,
+                            duration.longValue(), curve, r);
+                } else {
+                    r.success(OverlayService.resizeOverlay(overlayId,
+                            w == null ? -1 : w, h == null ? -1 : h, drag != null && drag));
+                }
+            }, result, false);
+        } else if (call.method.equals("hideOverlay") || call.method.equals("unhideOverlay")) {
+            boolean hide = call.method.equals("hideOverlay");
+            String overlayId = overlayIdArgument(call);
+            OverlayCommands.submit(OverlayCommands.KIND_HIDE, overlayId,
+                    r -> r.success(OverlayService.setHidden(overlayId, hide)), result, false);
+        } else if (call.method.equals("applyOverlayTransaction")) {
+            String overlayId = overlayIdArgument(call);
+            OverlayCommands.submit(null, overlayId,
+                    r -> r.success(OverlayService.applyTransaction(overlayId, call)), result, null);
+        } else if (call.method.equals("setRenderMode")) {
+            String overlayId = overlayIdArgument(call);
+            Boolean opaque = call.argument("opaque");
+            String renderMode = call.argument("renderMode");
+            // Without a window it is only stored for the next show, but still in call order.
+            OverlayCommands.submitSetting(overlayId, r -> r.success(
+                    OverlayService.setRenderMode(overlayId, renderMode, opaque != null && opaque)), result);
         } else if (call.method.equals("getOverlayPosition")) {
-            result.success(OverlayService.getCurrentPosition());
-        } else if (call.method.equals("closeOverlay")) {
-            if (OverlayService.isRunning) {
-                final Intent i = new Intent(context, OverlayService.class);
-                context.stopService(i);
-                result.success(true);
+            String overlayId = overlayIdArgument(call);
+            OverlayCommands.submit(null, overlayId,
+                    r -> r.success(OverlayService.getCurrentPosition(overlayId)), result, null);
+        } else if (call.method.equals("overlayStarted")) {
+            // Sent once by every isolate as its plugin registers, before the entrypoint runs.
+            boolean isOverlay = OverlayEngines.overlayIdOf(flutterEngine) != null;
+            if (isOverlay) OverlayEngines.markDartStarted(flutterEngine);
+            result.success(isOverlay);
+        } else if (call.method.equals("messengerReady")) {
+            // Sent by the Dart side once it listens; only the overlay engine's listener
+            // releases the queued messages.
+            String overlayId = OverlayEngines.overlayIdOf(flutterEngine);
+            if (OverlayEngines.STANDBY_ID.equals(overlayId)) {
+                // Nothing is addressed to it until it is promoted to an overlay.
+                OverlayEngines.setStandbyMessenger(messenger);
+            } else if (overlayId != null) {
+                MessageRelay.toOverlay(overlayId).attach(messenger);
+            } else {
+                MessageRelay.toMain().attach(messenger);
+            }
+            result.success(overlayId != null);
+        } else if (call.method.equals("configureMessenger")) {
+            Integer capacity = call.argument("capacity");
+            String overflow = call.argument("overflow");
+            Number ttlMs = call.argument("ttlMs");
+            MessageRelay.configureAll(
+                    capacity != null ? capacity : MessageRelay.DEFAULT_CAPACITY,
+                    MessageRelay.Overflow.fromName(overflow),
+                    ttlMs != null ? ttlMs.longValue() : 0);
+            result.success(null);
+        } else if (call.method.equals("configureEngine")) {
+            Boolean keepStandby = call.argument("keepStandby");
+            String prewarm = call.argument("prewarm");
+            Number prewarmDelayMs = call.argument("prewarmDelayMs");
+            OverlayEngines.setKeepStandby(context, keepStandby != null && keepStandby);
+            if (prewarm != null) {
+                OverlayEngines.setPrewarmPolicy(context, prewarm, prewarmDelayMs != null ? prewarmDelayMs.longValue() : -1);
             }
+            result.success(null);
+        } else if (call.method.equals("getEngineStats")) {
+            result.success(OverlayEngines.stats());
+        } else if (call.method.equals("listenGeometry")) {
+            Number intervalMs = call.argument("minIntervalMs");
+            GeometryEvents.listen(channel,
+                    intervalMs != null ? intervalMs.longValue() : GeometryEvents.DEFAULT_MIN_INTERVAL_MS);
+            result.success(null);
+        } else if (call.method.equals("cancelGeometry")) {
+            GeometryEvents.cancel(channel);
+            result.success(null);
+        } else if (call.method.equals("getOverlayMetrics")) {
+            Boolean reset = call.argument("reset");
+            result.success(OverlayMetrics.snapshot());
+            if (reset != null && reset) OverlayMetrics.reset();
+        } else if (call.method.equals("reportFrameTimings")) {
+            // Batches of the overlay engine's FrameTiming, forwarded by its Dart side.
+            long[] build = call.argument("buildUs");
+            long[] raster = call.argument("rasterUs");
+            if (build != null) for (long us : build) OverlayMetrics.frameBuildUs.record(us);
+            if (raster != null) for (long us : raster) OverlayMetrics.frameRasterUs.record(us);
+            result.success(null);
+        } else if (call.method.equals("closeOverlay")) {
+            String overlayId = call.argument("overlayId");
+            OverlayCommands.submit(null, overlayId, r -> r.success(overlayId != null
+                    ? OverlayService.close(overlayId)
+                    : OverlayService.closeAll()), result, false);
             return;
         } else {
             result.notImplemented();
@@ -137,21 +254,28 @@ public class FlutterOverlayWindowPlugin implements
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
         channel.setMethodCallHandler(null);
-        WindowSetup.messenger.setMessageHandler(null);
+        GeometryEvents.cancel(channel);
+        for (String tag : OverlayConstants.MESSENGER_TAGS) {
+            messenger.setMessageHandler(tag, null);
+        }
+        messenger.setMessageHandler(OverlayConstants.MESSENGER_ENVELOPE_TAG, null);
+        messenger.setMessageHandler(OverlayConstants.CONTROL_TAG, null);
+        messenger.setMessageHandler(OverlayConstants.BUFFERS_TAG, null);
+        String overlayId = OverlayEngines.overlayIdOf(flutterEngine);
+        if (OverlayEngines.STANDBY_ID.equals(overlayId)) {
+            OverlayEngines.setStandbyMessenger(null);
+        } else if (overlayId != null) {
+            MessageRelay.toOverlay(overlayId).detach(messenger);
+        } else {
+            MessageRelay.toMain().detach(messenger);
+        }
     }
 
     @Override
     public void onAttachedToActivity(@NonNull ActivityPluginBinding binding) {
         mActivity = binding.getActivity();
         binding.addActivityResultListener(this);
-        if (FlutterEngineCache.getInstance().get(OverlayConstants.CACHED_TAG) == null) {
-            FlutterEngineGroup enn = new FlutterEngineGroup(context);
-            DartExecutor.DartEntrypoint dEntry = new DartExecutor.DartEntrypoint(
-                    FlutterInjector.instance().flutterLoader().findAppBundlePath(),
-                    "overlayMain");
-            FlutterEngine engine = enn.createAndRunEngine(context, dEntry);
-            FlutterEngineCache.getInstance().put(OverlayConstants.CACHED_TAG, engine);
-        }
+        OverlayEngines.prewarm(context);
     }
 
     @Override
@@ -169,13 +293,44 @@ public class FlutterOverlayWindowPlugin implements
         this.mActivity = null;
     }
 
-    @Override
-    public void onMessage(@Nullable Object message, @NonNull BasicMessageChannel.Reply reply) {
-        BasicMessageChannel overlayMessageChannel = new BasicMessageChannel(
-                FlutterEngineCache.getInstance().get(OverlayConstants.CACHED_TAG)
-                        .getDartExecutor(),
-                OverlayConstants.MESSENGER_TAG, JSONMessageCodec.INSTANCE);
-        overlayMessageChannel.send(message, reply);
+    /**
+     * Messages from an overlay engine, the standby included, go to the main app; messages
+     * from the main app go to {@code overlayId}.
+     */
+    private void relayMessage(String tag, String overlayId, @Nullable String key, long ttlMs,
+                              @Nullable ByteBuffer message, @NonNull BinaryMessenger.BinaryReply reply) {
+        MessageRelay relay = OverlayEngines.overlayIdOf(flutterEngine) != null
+                ? MessageRelay.toMain()
+                : MessageRelay.toOverlay(overlayId);
+        relay.send(tag, key, ttlMs, message, reply);
+    }
+
+    /** Unwraps an envelope and relays its payload on the codec's own channel. */
+    private void relayEnvelope(@Nullable ByteBuffer message, @NonNull BinaryMessenger.BinaryReply reply) {
+        if (message == null) {
+            reply.reply(null);
+            return;
+        }
+        MessengerEnvelope envelope;
+        try {
+            envelope = MessengerEnvelope.parse(message);
+        } catch (BufferUnderflowException e) {
+            Log.w(TAG, "dropping truncated messenger envelope");
+            reply.reply(null);
+            return;
+        }
+        if (envelope.codec >= OverlayConstants.MESSENGER_TAGS.length) {
+            reply.reply(null);
+            return;
+        }
+        relayMessage(OverlayConstants.MESSENGER_TAGS[envelope.codec],
+                envelope.overlayId.isEmpty() ? WindowSetup.DEFAULT_ID : envelope.overlayId,
+                envelope.key.isEmpty() ? null : envelope.key, envelope.ttlMs, envelope.payload, reply);
+    }
+
+    private static String overlayIdArgument(MethodCall call) {
+        String overlayId = call.argument("overlayId");
+        return overlayId != null ? overlayId : WindowSetup.DEFAULT_ID;
     }
 
     private boolean checkOverlayPermission() {
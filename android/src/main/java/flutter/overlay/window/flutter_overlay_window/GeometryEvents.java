@@ -0,0 +1,93 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Pushes an overlay's window geometry to the Dart listeners of {@code overlayGeometry}.
+ *
+ * While the window is moving (drag, snap, animation) events are rate-limited to one per
+ * {@link #minIntervalMs}, and the newest geometry of a skipped burst is sent once the
+ * interval has passed. Changes that leave the window at rest are sent immediately, so the
+ * resting position is always the last event. Nothing is built while nobody listens. Must
+ * only be used from the main thread.
+ */
+final class GeometryEvents {
+
+    static final long DEFAULT_MIN_INTERVAL_MS = 100;
+
+    private static final List<MethodChannel> listeners = new ArrayList<>();
+    private static long minIntervalMs = DEFAULT_MIN_INTERVAL_MS;
+
+    static void listen(@NonNull MethodChannel channel, long intervalMs) {
+        if (!listeners.contains(channel)) listeners.add(channel);
+        minIntervalMs = Math.max(0, intervalMs);
+    }
+
+    static void cancel(@Nullable MethodChannel channel) {
+        listeners.remove(channel);
+    }
+
+    interface Source {
+        /** Current geometry, or null if the window isn't attached. */
+        @Nullable
+        Map<String, Object> geometry();
+    }
+
+    private final Source source;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable sendPending = this::send;
+    private boolean pending = false;
+    private long lastSentAt = 0;
+
+    GeometryEvents(@NonNull Source source) {
+        this.source = source;
+    }
+
+    /** The window geometry changed; {@code moving} is true while more changes will follow. */
+    void changed(boolean moving) {
+        if (listeners.isEmpty()) return;
+        if (!moving) {
+            settled();
+            return;
+        }
+        if (pending) return;
+        long wait = lastSentAt + minIntervalMs - SystemClock.elapsedRealtime();
+        if (wait <= 0) {
+            send();
+        } else {
+            pending = true;
+            handler.postDelayed(sendPending, wait);
+        }
+    }
+
+    /** The window came to rest; sends its geometry right away. */
+    void settled() {
+        if (listeners.isEmpty()) return;
+        handler.removeCallbacks(sendPending);
+        send();
+    }
+
+    void cancel() {
+        handler.removeCallbacks(sendPending);
+        pending = false;
+    }
+
+    private void send() {
+        pending = false;
+        Map<String, Object> geometry = source.geometry();
+        if (geometry == null) return;
+        lastSentAt = SystemClock.elapsedRealtime();
+        for (MethodChannel channel : listeners) channel.invokeMethod("onOverlayGeometry", geometry);
+    }
+}
@@ -0,0 +1,393 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Long-lived relay for shareData messages headed to one engine: one per overlay, plus one
+ * for the main app.
+ *
+ * Messages are forwarded as raw bytes on the messenger of the receiving engine. Until that
+ * engine has told us its Dart side is listening, and again whenever it detaches (the main
+ * app's engine goes away while overlays keep running), they wait in a bounded queue and
+ * are delivered in order, in a single batch message, once it attaches. When the queue is
+ * full the {@link Overflow} policy decides what is dropped, and messages whose time to
+ * live ran out are dropped before delivery; dropped messages are answered with a null
+ * reply so the sender's future still completes. Must only be used from the platform
+ * thread.
+ *
+ * Batch: {@code [u32 count]} then per message {@code [u8 codec][u32 length][payload]};
+ * the reply has {@code [u32 count]} then per message {@code [u32 length][reply]}. A
+ * length of {@code 0xffffffff} stands for null; byte order is {@link OverlayConstants#WIRE_ORDER}.
+ */
+final class MessageRelay {
+
+    enum Overflow {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        /** Keyed messages replace the queued message with the same key; otherwise drop oldest. */
+        COALESCE_BY_KEY;
+
+        static Overflow fromName(@Nullable String name) {
+            if ("dropNewest".equals(name)) return DROP_NEWEST;
+            if ("coalesceByKey".equals(name)) return COALESCE_BY_KEY;
+            return DROP_OLDEST;
+        }
+    }
+
+    static final int DEFAULT_CAPACITY = 64;
+    private static final int NULL_LENGTH = -1;
+
+    private static final Map<String, MessageRelay> TO_OVERLAY = new HashMap<>();
+    private static final MessageRelay TO_MAIN = new MessageRelay();
+    private static int defaultCapacity = DEFAULT_CAPACITY;
+    private static Overflow defaultOverflow = Overflow.DROP_OLDEST;
+    private static long defaultTtlMs = 0;
+
+    /** Relay for messages sent by the main app to the given overlay's engine. */
+    static MessageRelay toOverlay(@NonNull String overlayId) {
+        MessageRelay relay = TO_OVERLAY.get(overlayId);
+        if (relay == null) {
+            relay = new MessageRelay();
+            relay.configure(defaultCapacity, defaultOverflow, defaultTtlMs);
+            TO_OVERLAY.put(overlayId, relay);
+        }
+        return relay;
+    }
+
+    @VisibleForTesting
+    static int overlayRelayCount() {
+        return TO_OVERLAY.size();
+    }
+
+    /** Drops every relay and count, as in a new process. */
+    @VisibleForTesting
+    static void resetForTesting() {
+        for (MessageRelay relay : TO_OVERLAY.values()) relay.clear();
+        TO_OVERLAY.clear();
+        TO_MAIN.clear();
+        TO_MAIN.detach(null);
+        configureAll(DEFAULT_CAPACITY, Overflow.DROP_OLDEST, 0);
+        resetCounts();
+    }
+
+    /** Relay for messages sent by any overlay to the main app. */
+    static MessageRelay toMain() {
+        return TO_MAIN;
+    }
+
+    /**
+     * Applies the queue settings to every relay, including ones created later.
+     *
+     * @param ttlMs how long a message may wait for its receiver unless it says otherwise; 0 for no limit
+     */
+    static void configureAll(int capacity, Overflow overflow, long ttlMs) {
+        defaultCapacity = capacity;
+        defaultOverflow = overflow;
+        defaultTtlMs = ttlMs;
+        TO_MAIN.configure(capacity, overflow, ttlMs);
+        for (MessageRelay relay : TO_OVERLAY.values()) relay.configure(capacity, overflow, ttlMs);
+    }
+
+    /** Forgets a closed overlay's relay, answering anything still queued. */
+    static void remove(@NonNull String overlayId) {
+        MessageRelay relay = TO_OVERLAY.remove(overlayId);
+        if (relay != null) {
+            relay.clear();
+            retired.add(relay);
+        }
+    }
+
+    // Counts of relays that were removed, so totals survive closed overlays
+    private static final MessageRelay retired = new MessageRelay();
+
+    /** Message counts summed over every relay, for the overlay metrics. */
+    static Map<String, Object> totals() {
+        MessageRelay sum = new MessageRelay();
+        sum.add(TO_MAIN);
+        sum.add(retired);
+        int queued = TO_MAIN.queued();
+        for (MessageRelay relay : TO_OVERLAY.values()) {
+            sum.add(relay);
+            queued += relay.queued();
+        }
+        Map<String, Object> totals = new HashMap<>();
+        totals.put("received", sum.received);
+        totals.put("sent", sum.sent);
+        totals.put("dropped", sum.dropped);
+        totals.put("coalesced", sum.coalesced);
+        totals.put("expired", sum.expired);
+        totals.put("batches", sum.batches);
+        totals.put("queued", queued);
+        return totals;
+    }
+
+    static void resetCounts() {
+        TO_MAIN.zeroCounts();
+        retired.zeroCounts();
+        for (MessageRelay relay : TO_OVERLAY.values()) relay.zeroCounts();
+    }
+
+    private static final class Pending {
+        final String tag;
+        final String key;
+        ByteBuffer payload;
+        BinaryMessenger.BinaryReply reply;
+        /** elapsedRealtime after which it is dropped, or 0 to wait for ever. */
+        long expiresAt;
+
+        Pending(String tag, String key, ByteBuffer payload, BinaryMessenger.BinaryReply reply, long expiresAt) {
+            this.tag = tag;
+            this.key = key;
+            this.payload = payload;
+            this.reply = reply;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private int capacity = DEFAULT_CAPACITY;
+    private Overflow overflow = Overflow.DROP_OLDEST;
+    private long ttlMs = 0;
+    @Nullable private BinaryMessenger target;
+
+    private long received;
+    private long sent;
+    private long dropped;
+    private long coalesced;
+    private long expired;
+    private long batches;
+
+    void configure(int capacity, Overflow overflow, long ttlMs) {
+        this.capacity = Math.max(1, capacity);
+        this.overflow = overflow;
+        this.ttlMs = Math.max(0, ttlMs);
+        while (queue.size() > this.capacity) drop(queue.pollFirst());
+    }
+
+    /** The receiving Dart side is listening; delivers everything that queued up meanwhile. */
+    void attach(@NonNull BinaryMessenger target) {
+        this.target = target;
+        dropExpired(SystemClock.elapsedRealtime());
+        if (queue.size() == 1) {
+            Pending p = queue.pollFirst();
+            deliver(target, p.tag, p.payload, p.reply);
+        } else if (!queue.isEmpty()) {
+            deliverBatch(target);
+        }
+    }
+
+    void detach(@Nullable BinaryMessenger target) {
+        if (target == null || this.target == target) this.target = null;
+    }
+
+    boolean isAttached() {
+        return target != null;
+    }
+
+    /**
+     * Sends or queues a message. {@code message} is only valid for the duration of the
+     * call, so it is copied if it has to wait.
+     *
+     * @param ttlMs how long it may wait for the receiver; 0 for no limit, negative for the configured default
+     */
+    void send(@NonNull String tag, @Nullable String key, long ttlMs, @Nullable ByteBuffer message,
+              @NonNull BinaryMessenger.BinaryReply reply) {
+        received++;
+        BinaryMessenger t = target;
+        if (t != null && queue.isEmpty()) {
+            deliver(t, tag, readyToSend(message), reply);
+            return;
+        }
+
+        ByteBuffer copy = copyOf(message);
+        long now = SystemClock.elapsedRealtime();
+        long ttl = ttlMs < 0 ? this.ttlMs : ttlMs;
+        long expiresAt = ttl > 0 ? now + ttl : 0;
+        if (key != null && overflow == Overflow.COALESCE_BY_KEY) {
+            for (Pending p : queue) {
+                if (key.equals(p.key) && tag.equals(p.tag)) {
+                    p.reply.reply(null);
+                    p.payload = copy;
+                    p.reply = reply;
+                    p.expiresAt = expiresAt;
+                    coalesced++;
+                    return;
+                }
+            }
+        }
+        // Make room from stale messages before dropping live ones.
+        if (queue.size() >= capacity) dropExpired(now);
+        if (queue.size() >= capacity) {
+            if (overflow == Overflow.DROP_NEWEST) {
+                dropped++;
+                reply.reply(null);
+                return;
+            }
+            drop(queue.pollFirst());
+        }
+        queue.addLast(new Pending(tag, key, copy, reply, expiresAt));
+    }
+
+    private void dropExpired(long now) {
+        Iterator<Pending> it = queue.iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            if (p.expiresAt != 0 && p.expiresAt <= now) {
+                it.remove();
+                expired++;
+                p.reply.reply(null);
+            }
+        }
+    }
+
+    /** Drops everything still queued, answering each sender with a null reply. */
+    void clear() {
+        Iterator<Pending> it = queue.iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            it.remove();
+            drop(p);
+        }
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    long sentCount() {
+        return sent;
+    }
+
+    long droppedCount() {
+        return dropped;
+    }
+
+    long coalescedCount() {
+        return coalesced;
+    }
+
+    private void add(MessageRelay other) {
+        received += other.received;
+        sent += other.sent;
+        dropped += other.dropped;
+        coalesced += other.coalesced;
+        expired += other.expired;
+        batches += other.batches;
+    }
+
+    private void zeroCounts() {
+        received = 0;
+        sent = 0;
+        dropped = 0;
+        coalesced = 0;
+        expired = 0;
+        batches = 0;
+    }
+
+    private void drop(@Nullable Pending p) {
+        if (p == null) return;
+        dropped++;
+        p.reply.reply(null);
+    }
+
+    private void deliver(BinaryMessenger t, String tag, @Nullable ByteBuffer payload,
+                         BinaryMessenger.BinaryReply reply) {
+        sent++;
+        long start = System.nanoTime();
+        t.send(tag, payload, response -> {
+            OverlayMetrics.messageRoundTripUs.record((System.nanoTime() - start) / 1000);
+            reply.reply(readyToSend(response));
+        });
+    }
+
+    /** Delivers the whole queue as one batch message and fans its reply out to the senders. */
+    private void deliverBatch(BinaryMessenger t) {
+        final Pending[] batch = queue.toArray(new Pending[0]);
+        queue.clear();
+        int size = 4;
+        for (Pending p : batch) size += 5 + (p.payload != null ? p.payload.position() : 0);
+        ByteBuffer message = ByteBuffer.allocateDirect(size).order(OverlayConstants.WIRE_ORDER);
+        message.putInt(batch.length);
+        for (Pending p : batch) {
+            message.put((byte) codecIndex(p.tag));
+            if (p.payload == null) {
+                message.putInt(NULL_LENGTH);
+            } else {
+                // Queued copies are positioned at their end, ready to send.
+                ByteBuffer payload = p.payload.duplicate();
+                payload.flip();
+                message.putInt(payload.remaining());
+                message.put(payload);
+            }
+        }
+        sent += batch.length;
+        batches++;
+        long start = System.nanoTime();
+        t.send(OverlayConstants.MESSENGER_BATCH_TAG, message, response -> {
+            OverlayMetrics.messageRoundTripUs.record((System.nanoTime() - start) / 1000);
+            answerBatch(batch, response);
+        });
+    }
+
+    private static void answerBatch(Pending[] batch, @Nullable ByteBuffer response) {
+        int i = 0;
+        if (response != null) {
+            response.order(OverlayConstants.WIRE_ORDER);
+            try {
+                int count = Math.min(response.getInt(), batch.length);
+                for (; i < count; i++) {
+                    int length = response.getInt();
+                    if (length == NULL_LENGTH) {
+                        batch[i].reply.reply(null);
+                        continue;
+                    }
+                    ByteBuffer reply = response.duplicate();
+                    reply.limit(reply.position() + length);
+                    response.position(response.position() + length);
+                    // The reply is only read during this call, so a view of the response will do.
+                    batch[i].reply.reply(readyToSend(reply.slice()));
+                }
+            } catch (RuntimeException e) {
+                // Truncated reply; the rest is answered with null below.
+            }
+        }
+        for (; i < batch.length; i++) batch[i].reply.reply(null);
+    }
+
+    private static int codecIndex(String tag) {
+        for (int i = 0; i < OverlayConstants.MESSENGER_TAGS.length; i++) {
+            if (OverlayConstants.MESSENGER_TAGS[i].equals(tag)) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Buffers handed to us by the embedder are positioned at 0, while the send/reply
+     * paths take the current position as the payload size.
+     */
+    @Nullable
+    static ByteBuffer readyToSend(@Nullable ByteBuffer buffer) {
+        if (buffer != null) buffer.position(buffer.limit());
+        return buffer;
+    }
+
+    @Nullable
+    static ByteBuffer copyOf(@Nullable ByteBuffer buffer) {
+        if (buffer == null) return null;
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.remaining());
+        copy.put(buffer.duplicate());
+        return copy;
+    }
+}
@@ -0,0 +1,73 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Header of a message on {@link OverlayConstants#MESSENGER_ENVELOPE_TAG}:
+ * {@code [u8 codec][u16 idLen][id][u16 keyLen][key][u32 ttlMs if codec & 0x80][payload]},
+ * in the byte order of {@link OverlayConstants#WIRE_ORDER}. Plain Java, so the benchmark module can run it on a plain JVM.
+ */
+final class MessengerEnvelope {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FLAG_TTL = 0x80;
+
+    final int codec;
+    final String overlayId;
+    final String key;
+    /** How long the message may wait for its receiver, or -1 for the relay's default. */
+    final long ttlMs;
+    /** The payload, sharing the message's content. */
+    final ByteBuffer payload;
+
+    private MessengerEnvelope(int codec, String overlayId, String key, long ttlMs, ByteBuffer payload) {
+        this.codec = codec;
+        this.overlayId = overlayId;
+        this.key = key;
+        this.ttlMs = ttlMs;
+        this.payload = payload;
+    }
+
+    /**
+     * Reads the header from {@code message}'s position.
+     *
+     * @throws BufferUnderflowException if the message is shorter than its header says
+     */
+    static MessengerEnvelope parse(ByteBuffer message) {
+        message.order(OverlayConstants.WIRE_ORDER);
+        int codec = message.get() & 0xff;
+        String overlayId = readString(message);
+        String key = readString(message);
+        long ttlMs = (codec & FLAG_TTL) != 0 ? message.getInt() & 0xffffffffL : -1;
+        return new MessengerEnvelope(codec & ~FLAG_TTL, overlayId, key, ttlMs, message.slice());
+    }
+
+    /** Builds an envelope, as the Dart side does. */
+    static ByteBuffer wrap(int codec, String overlayId, String key, ByteBuffer payload) {
+        return wrap(codec, overlayId, key, -1, payload);
+    }
+
+    /** Builds an envelope with a time to live, unless {@code ttlMs} is negative. */
+    static ByteBuffer wrap(int codec, String overlayId, String key, long ttlMs, ByteBuffer payload) {
+        byte[] id = overlayId.getBytes(UTF_8);
+        byte[] k = key.getBytes(UTF_8);
+        int ttlBytes = ttlMs >= 0 ? 4 : 0;
+        ByteBuffer envelope = ByteBuffer.allocateDirect(5 + id.length + k.length + ttlBytes + payload.remaining())
+                .order(OverlayConstants.WIRE_ORDER);
+        envelope.put((byte) (ttlMs >= 0 ? codec | FLAG_TTL : codec));
+        envelope.putShort((short) id.length).put(id);
+        envelope.putShort((short) k.length).put(k);
+        if (ttlMs >= 0) envelope.putInt((int) ttlMs);
+        envelope.put(payload.duplicate());
+        envelope.flip();
+        return envelope;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
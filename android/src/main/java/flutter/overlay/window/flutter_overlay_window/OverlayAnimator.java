@@ -0,0 +1,119 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.animation.TimeInterpolator;
+import android.view.Choreographer;
+import android.view.animation.DecelerateInterpolator;
+
+/**
+ * Vsync-driven animator for the overlay window position and size.
+ *
+ * Runs on the thread that created it (the service main thread) and is driven by
+ * {@link Choreographer} frame callbacks, so no timer thread is created per gesture.
+ * Progress is computed from frame time, so dropped frames don't slow the animation down.
+ * Starting a new animation or calling {@link #cancel()} interrupts the running one.
+ */
+final class OverlayAnimator implements Choreographer.FrameCallback {
+
+    interface Listener {
+        /** Called once per frame with the interpolated position and size. */
+        void onFrame(int x, int y, int width, int height);
+
+        /** Called once per animation; {@code finished} is false if it was interrupted. */
+        void onEnd(boolean finished);
+    }
+
+    static final long DEFAULT_DURATION_MS = 250;
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private static final TimeInterpolator DEFAULT_INTERPOLATOR = new DecelerateInterpolator(1.5f);
+
+    private int fromX, fromY, toX, toY;
+    private int fromWidth, fromHeight, toWidth, toHeight;
+    private TimeInterpolator current;
+    private long durationNanos;
+    private long startNanos;
+    private boolean running;
+    private Listener listener;
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /** Animates the position only; the size reported to the listener stays 0. */
+    void start(int fromX, int fromY, int toX, int toY, long durationMs, Listener listener) {
+        start(fromX, fromY, 0, 0, toX, toY, 0, 0, durationMs, null, listener);
+    }
+
+    /**
+     * Animates position and size together, so each frame is a single layout update.
+     * {@code interpolator}, e.g. a {@link #sampled} Dart curve, replaces the default
+     * deceleration when not null.
+     */
+    void start(int fromX, int fromY, int fromWidth, int fromHeight,
+               int toX, int toY, int toWidth, int toHeight,
+               long durationMs, TimeInterpolator interpolator, Listener listener) {
+        cancel();
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.toX = toX;
+        this.toY = toY;
+        this.fromWidth = fromWidth;
+        this.fromHeight = fromHeight;
+        this.toWidth = toWidth;
+        this.toHeight = toHeight;
+        this.current = interpolator != null ? interpolator : DEFAULT_INTERPOLATOR;
+        this.durationNanos = Math.max(1, durationMs) * 1_000_000L;
+        this.startNanos = -1;
+        this.listener = listener;
+        this.running = true;
+        choreographer.postFrameCallback(this);
+    }
+
+    /** Stops the running animation, leaving the window where the last frame put it. */
+    void cancel() {
+        if (!running) return;
+        running = false;
+        choreographer.removeFrameCallback(this);
+        Listener l = listener;
+        listener = null;
+        if (l != null) l.onEnd(false);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) return;
+        if (startNanos < 0) startNanos = frameTimeNanos;
+
+        float t = Math.min(1f, (float) (frameTimeNanos - startNanos) / durationNanos);
+        float f = current.getInterpolation(t);
+        Listener l = listener;
+        l.onFrame(lerp(fromX, toX, f), lerp(fromY, toY, f), lerp(fromWidth, toWidth, f), lerp(fromHeight, toHeight, f));
+        // The listener cancelled or restarted us from onFrame.
+        if (!running || listener != l) return;
+
+        if (t >= 1f) {
+            running = false;
+            listener = null;
+            l.onEnd(true);
+        } else {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    private static int lerp(int from, int to, float f) {
+        return from + Math.round((to - from) * f);
+    }
+
+    /**
+     * Interpolator following a curve sampled at evenly spaced times, e.g. a Dart
+     * {@code Curve}, with linear interpolation between the samples.
+     */
+    static TimeInterpolator sampled(final float[] samples) {
+        if (samples == null || samples.length < 2) return null;
+        return input -> {
+            float pos = Math.max(0f, Math.min(1f, input)) * (samples.length - 1);
+            int i = Math.min((int) pos, samples.length - 2);
+            return samples[i] + (samples[i + 1] - samples[i]) * (pos - i);
+        };
+    }
+}
@@ -0,0 +1,216 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Ordered queue of window commands from the plugin to {@link OverlayService}.
+ *
+ * While the service runs, commands are applied right away. While it is being started,
+ * they wait here and are applied in order once it is up, so a move issued right after
+ * showOverlay lands on the new window instead of finding no overlay. A queued command of
+ * a mergeable kind (a move, a resize, hide/unhide) is replaced by a newer one of the same
+ * kind for the same overlay, as long as nothing else for that overlay was queued in
+ * between; only the newest is applied and every caller gets its result. Results are only
+ * sent once a command was applied. Must only be used from the main thread.
+ */
+final class OverlayCommands {
+    private OverlayCommands() {}
+
+    private static final String TAG = "OverlayCommands";
+
+    /** How long a started service gets to take its commands before they are failed. */
+    static final long START_TIMEOUT_MS = 10_000;
+
+    // Mergeable kinds
+    static final String KIND_MOVE = "move";
+    static final String KIND_RESIZE = "resize";
+    static final String KIND_HIDE = "hide";
+
+    /** Applies a command to the running service and answers {@code result} once done. */
+    interface Action {
+        void apply(@NonNull MethodChannel.Result result);
+    }
+
+    private static final class Command {
+        @Nullable final String kind;
+        @Nullable final String overlayId;
+        Action action;
+        final List<MethodChannel.Result> results = new ArrayList<>(1);
+
+        Command(@Nullable String kind, @Nullable String overlayId, Action action, MethodChannel.Result result) {
+            this.kind = kind;
+            this.overlayId = overlayId;
+            this.action = action;
+            results.add(result);
+        }
+    }
+
+    private static final ArrayDeque<Command> queue = new ArrayDeque<>();
+    @Nullable private static Context appContext;
+    private static boolean starting = false;
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    // The service was never created, or crashed in onCreate; nothing will drain the queue.
+    private static final Runnable startTimedOut = () -> {
+        Log.e(TAG, "the overlay service didn't start within " + START_TIMEOUT_MS + "ms");
+        starting = false;
+        failAll("SERVICE", "the overlay service didn't start");
+    };
+    private static int merged = 0;
+
+    /**
+     * Queues a command that starts the service if needed, like showOverlay.
+     *
+     * @param overlayId the overlay it applies to, or null for all of them
+     */
+    static void submitStarting(@NonNull Context context, @Nullable String overlayId,
+                               @NonNull Action action, @NonNull MethodChannel.Result result) {
+        if (OverlayService.isCreated() && queue.isEmpty()) {
+            action.apply(result);
+            return;
+        }
+        appContext = context.getApplicationContext();
+        queue.add(new Command(null, overlayId, action, result));
+        start();
+    }
+
+    private static void start() {
+        if (starting || appContext == null) return;
+        starting = true;
+        try {
+            appContext.startService(new Intent(appContext, OverlayService.class));
+            handler.postDelayed(startTimedOut, START_TIMEOUT_MS);
+        } catch (RuntimeException e) {
+            // Background start restrictions; nothing queued can be applied.
+            Log.e(TAG, "starting the overlay service failed", e);
+            starting = false;
+            failAll("SERVICE", e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a command to the running service, or queues it behind a pending start.
+     * Without either there is no window to apply it to, and {@code notShown} answers.
+     *
+     * @param kind commands of the same non-null kind and overlay may be merged
+     * @param overlayId the overlay it applies to, or null for all of them
+     */
+    static void submit(@Nullable String kind, @Nullable String overlayId, @NonNull Action action,
+                       @NonNull MethodChannel.Result result, @Nullable Object notShown) {
+        if (queue.isEmpty()) {
+            if (OverlayService.isCreated()) {
+                action.apply(result);
+            } else {
+                result.success(notShown);
+            }
+            return;
+        }
+        if (kind != null) {
+            Iterator<Command> pending = queue.descendingIterator();
+            while (pending.hasNext()) {
+                Command queued = pending.next();
+                if (!affects(queued, overlayId)) continue;
+                if (kind.equals(queued.kind) && overlayId != null && overlayId.equals(queued.overlayId)) {
+                    queued.action = action;
+                    queued.results.add(result);
+                    merged++;
+                    return;
+                }
+                break;
+            }
+        }
+        queue.add(new Command(kind, overlayId, action, result));
+    }
+
+    /**
+     * Queues a command behind a pending start like {@link #submit}, but applies it right
+     * away otherwise, even without the service: for settings that are stored until the
+     * next show when there is no window.
+     */
+    static void submitSetting(@Nullable String overlayId, @NonNull Action action,
+                              @NonNull MethodChannel.Result result) {
+        if (queue.isEmpty()) {
+            action.apply(result);
+        } else {
+            queue.add(new Command(null, overlayId, action, result));
+        }
+    }
+
+    /** Whether nothing is queued, so a command may be applied without going through here. */
+    static boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    private static boolean affects(Command queued, @Nullable String overlayId) {
+        return queued.overlayId == null || overlayId == null || queued.overlayId.equals(overlayId);
+    }
+
+    /**
+     * Called by the service once it can apply commands; applies everything queued, in order.
+     * If a command stops the service, the rest waits for it to be started again.
+     */
+    static void drain() {
+        starting = false;
+        handler.removeCallbacks(startTimedOut);
+        Command command;
+        while ((command = queue.peek()) != null) {
+            if (!OverlayService.isCreated()) {
+                start();
+                return;
+            }
+            queue.poll();
+            final List<MethodChannel.Result> results = command.results;
+            command.action.apply(results.size() == 1 ? results.get(0) : new MethodChannel.Result() {
+                @Override
+                public void success(@Nullable Object value) {
+                    for (MethodChannel.Result r : results) r.success(value);
+                }
+
+                @Override
+                public void error(@NonNull String code, @Nullable String message, @Nullable Object details) {
+                    for (MethodChannel.Result r : results) r.error(code, message, details);
+                }
+
+                @Override
+                public void notImplemented() {
+                    for (MethodChannel.Result r : results) r.notImplemented();
+                }
+            });
+        }
+    }
+
+    private static void failAll(String code, @Nullable String message) {
+        Command command;
+        while ((command = queue.poll()) != null) {
+            for (MethodChannel.Result r : command.results) r.error(code, message, null);
+        }
+    }
+
+    @VisibleForTesting
+    static void resetForTesting() {
+        handler.removeCallbacks(startTimedOut);
+        queue.clear();
+        appContext = null;
+        starting = false;
+        merged = 0;
+    }
+
+    /** Commands that were replaced by a newer one before being applied. */
+    static int mergedCount() {
+        return merged;
+    }
+}
@@ -1,20 +1,51 @@
 package flutter.overlay.window.flutter_overlay_window;
 
+import java.nio.ByteOrder;
+
 final class OverlayConstants {
     private OverlayConstants() {}
 
+    // Byte order of every binary format of the plugin: the messenger envelope and batch,
+    // the control protocol and the shared buffer requests. The Dart side writes them with
+    // Endian.little.
+    static final ByteOrder WIRE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
     // Flutter
     static final String CACHED_TAG = "jr_overlay_engine";
+    static final String CHANNEL_TAG = "flutter.overlay.window/channel";
     static final String OVERLAY_TAG = "flutter.overlay.window/overlay";
     static final String MESSENGER_TAG = "flutter.overlay.window/messenger";
+    static final String MESSENGER_STANDARD_TAG = MESSENGER_TAG + "/standard";
+    static final String MESSENGER_BINARY_TAG = MESSENGER_TAG + "/binary";
+    // Envelope, see MessengerEnvelope
+    static final String MESSENGER_ENVELOPE_TAG = MESSENGER_TAG + "/envelope";
+    // Messages that queued up while the receiver was away, delivered in one go, see MessageRelay
+    static final String MESSENGER_BATCH_TAG = MESSENGER_TAG + "/batch";
+    // Indexed by the Dart OverlayMessageCodec ordinal.
+    static final String[] MESSENGER_TAGS = {
+            MESSENGER_TAG,
+            MESSENGER_STANDARD_TAG,
+            MESSENGER_BINARY_TAG,
+    };
+    // Binary window control protocol, see OverlayControl
+    static final String CONTROL_TAG = "flutter.overlay.window/control";
+    // Shared buffer registry, see SharedBuffers
+    static final String BUFFERS_TAG = "flutter.overlay.window/buffers";
+
+    // shareData codecs; each one travels on its own messenger channel
+    static final String CODEC_JSON = "json";
+    static final String CODEC_STANDARD = "standard";
+    static final String CODEC_BINARY = "binary";
+
+    // Render surfaces
+    static final String RENDER_AUTO = "auto";
+    static final String RENDER_SURFACE = "surface";
+    static final String RENDER_TEXTURE = "texture";
 
     // Notification / Service
     static final String CHANNEL_ID = "jr_overlay_channel";
     static final int NOTIFICATION_ID = 42421;
 
-    // Intent extras & helpers
+    // Position helpers
     static final int DEFAULT_XY = -1999;
-
-    // Close extra key
-    static final String INTENT_EXTRA_IS_CLOSE_WINDOW = "IsCloseWindow";
 }
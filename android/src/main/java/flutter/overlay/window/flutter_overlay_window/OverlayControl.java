@@ -0,0 +1,198 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Binary protocol on {@link OverlayConstants#CONTROL_TAG} for the window calls made many
+ * times per second, so they skip the method codec's maps and boxed numbers. Byte order
+ * is {@link OverlayConstants#WIRE_ORDER}.
+ *
+ * Request: {@code [u8 opcode][u8 flags][u16 idLen][utf-8 overlay id][fields]}, where an
+ * empty id means the default overlay, or with {@link #FLAG_SELF} the overlay the caller
+ * runs in. Fields per opcode:
+ * <ul>
+ *   <li>{@link #OP_MOVE}: {@code i32 x, i32 y} in dp; reply {@code [u8 status]}</li>
+ *   <li>{@link #OP_RESIZE}: {@code i32 width, i32 height, u8 enableDrag}; reply {@code [u8 status]}</li>
+ *   <li>{@link #OP_GET_POSITION}: none; reply {@code [u8 status][f64 x][f64 y]} in dp</li>
+ * </ul>
+ * Status is {@link #STATUS_OK}, {@link #STATUS_FAILED} (the overlay isn't shown) or
+ * {@link #STATUS_BAD_REQUEST}. While {@link OverlayCommands} holds nothing, commands are
+ * applied straight away and answered from shared reply buffers, so a call allocates
+ * nothing; otherwise they are queued like their method channel counterparts, so both keep
+ * one order and merge with each other.
+ */
+final class OverlayControl {
+    private OverlayControl() {}
+
+    private static final String TAG = "OverlayControl";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int OP_MOVE = 1;
+    static final int OP_RESIZE = 2;
+    static final int OP_GET_POSITION = 3;
+
+    static final int FLAG_SELF = 1;
+
+    static final byte STATUS_FAILED = 0;
+    static final byte STATUS_OK = 1;
+    static final byte STATUS_BAD_REQUEST = 2;
+
+    // Overlay ids repeat on every call; decode each distinct one once.
+    private static byte[] lastIdBytes = new byte[0];
+    private static String lastId = "";
+
+    /**
+     * @param callerOverlayId the overlay the calling engine renders ({@link OverlayEngines#STANDBY_ID}
+     *                        for the standby), or null for the main app
+     */
+    static void handle(@Nullable ByteBuffer message, @Nullable String callerOverlayId,
+                       @NonNull BinaryMessenger.BinaryReply reply) {
+        if (message == null) {
+            reply.reply(status(STATUS_BAD_REQUEST));
+            return;
+        }
+        message.order(OverlayConstants.WIRE_ORDER);
+        final int op;
+        final String overlayId;
+        try {
+            op = message.get() & 0xff;
+            int flags = message.get() & 0xff;
+            String id = readId(message);
+            if (id.isEmpty()) {
+                id = (flags & FLAG_SELF) != 0 && callerOverlayId != null ? callerOverlayId : WindowSetup.DEFAULT_ID;
+            }
+            overlayId = id;
+        } catch (BufferUnderflowException e) {
+            reply.reply(status(STATUS_BAD_REQUEST));
+            return;
+        }
+
+        boolean direct = OverlayCommands.isIdle();
+        boolean created = OverlayService.isCreated();
+        try {
+            switch (op) {
+                case OP_MOVE: {
+                    final int x = message.getInt();
+                    final int y = message.getInt();
+                    if (direct) {
+                        reply.reply(status(created && OverlayService.moveOverlay(overlayId, x, y)));
+                    } else {
+                        OverlayCommands.submit(OverlayCommands.KIND_MOVE, overlayId,
+                                r -> r.success(OverlayService.moveOverlay(overlayId, x, y)), new ReplyResult(reply), false);
+                    }
+                    break;
+                }
+                case OP_RESIZE: {
+                    final int width = message.getInt();
+                    final int height = message.getInt();
+                    final boolean enableDrag = message.get() != 0;
+                    if (direct) {
+                        reply.reply(status(created && OverlayService.resizeOverlay(overlayId, width, height, enableDrag)));
+                    } else {
+                        OverlayCommands.submit(OverlayCommands.KIND_RESIZE, overlayId,
+                                r -> r.success(OverlayService.resizeOverlay(overlayId, width, height, enableDrag)),
+                                new ReplyResult(reply), false);
+                    }
+                    break;
+                }
+                case OP_GET_POSITION:
+                    if (direct) {
+                        reply.reply(created ? position(overlayId) : status(STATUS_FAILED));
+                    } else {
+                        OverlayCommands.submit(null, overlayId, r -> r.success(position(overlayId)),
+                                new ReplyResult(reply), false);
+                    }
+                    break;
+                default:
+                    Log.w(TAG, "unknown control opcode " + op);
+                    reply.reply(status(STATUS_BAD_REQUEST));
+            }
+        } catch (BufferUnderflowException e) {
+            reply.reply(status(STATUS_BAD_REQUEST));
+        }
+    }
+
+    private static String readId(ByteBuffer message) {
+        int length = message.getShort() & 0xffff;
+        if (length == 0) return "";
+        if (length == lastIdBytes.length) {
+            boolean same = true;
+            int start = message.position();
+            for (int i = 0; i < length && same; i++) same = message.get(start + i) == lastIdBytes[i];
+            if (same) {
+                message.position(start + length);
+                return lastId;
+            }
+        }
+        byte[] bytes = new byte[length];
+        message.get(bytes);
+        lastIdBytes = bytes;
+        lastId = new String(bytes, UTF_8);
+        return lastId;
+    }
+
+    // The engine copies a reply up to its position before reply() returns, so replies can
+    // be written into shared buffers.
+    private static final ByteBuffer POSITION_REPLY = ByteBuffer.allocateDirect(17).order(OverlayConstants.WIRE_ORDER);
+
+    /** The position reply, written up to its position as the engine expects, or a failed status. */
+    private static ByteBuffer position(String overlayId) {
+        ByteBuffer out = POSITION_REPLY;
+        out.clear();
+        out.put(STATUS_OK);
+        if (!OverlayService.writePosition(overlayId, out)) return status(STATUS_FAILED);
+        return out;
+    }
+
+    private static final ByteBuffer[] STATUS_REPLIES = {
+            ByteBuffer.allocateDirect(1).put(STATUS_FAILED),
+            ByteBuffer.allocateDirect(1).put(STATUS_OK),
+            ByteBuffer.allocateDirect(1).put(STATUS_BAD_REQUEST),
+    };
+
+    static ByteBuffer status(byte status) {
+        return STATUS_REPLIES[status];
+    }
+
+    private static ByteBuffer status(boolean ok) {
+        return STATUS_REPLIES[ok ? STATUS_OK : STATUS_FAILED];
+    }
+
+    /** Turns a queued command's result into a reply: a prepared buffer, or true/false as a status. */
+    private static final class ReplyResult implements MethodChannel.Result {
+        private final BinaryMessenger.BinaryReply reply;
+
+        ReplyResult(BinaryMessenger.BinaryReply reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public void success(@Nullable Object value) {
+            if (value instanceof ByteBuffer) {
+                reply.reply((ByteBuffer) value);
+            } else {
+                reply.reply(status(Boolean.TRUE.equals(value)));
+            }
+        }
+
+        @Override
+        public void error(@NonNull String code, @Nullable String message, @Nullable Object details) {
+            reply.reply(status(STATUS_FAILED));
+        }
+
+        @Override
+        public void notImplemented() {
+            reply.reply(status(STATUS_BAD_REQUEST));
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.FlutterInjector;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineCache;
+import io.flutter.embedding.engine.FlutterEngineGroup;
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.embedding.engine.renderer.FlutterUiDisplayListener;
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Process-wide owner of the overlay engines.
+ *
+ * Every overlay id gets its own engine, and all of them are spawned from a single
+ * {@link FlutterEngineGroup}, so after the first one they share the group's isolate snapshot
+ * and code instead of paying for a full engine each. The default overlay keeps using
+ * {@link OverlayConstants#CACHED_TAG} in the engine cache. Optionally one extra engine is
+ * kept warm so the next overlay can be shown without waiting for a spawn. When the first
+ * engine is started is decided by the prewarm policy, persisted so that it applies from the
+ * next app launch onwards. Must only be used from the main thread.
+ */
+final class OverlayEngines {
+    private OverlayEngines() {}
+
+    private static final String TAG = "OverlayEngines";
+    static final String OVERLAY_ENTRYPOINT = "overlayMain";
+    /** {@link #overlayIdOf} the standby engine, which runs overlay code but has no overlay yet. */
+    static final String STANDBY_ID = "flutter.overlay.window/standby";
+
+    // Prewarm policies
+    static final String PREWARM_EAGER = "eager";
+    static final String PREWARM_ON_SHOW = "onShow";
+    static final String PREWARM_IDLE = "idle";
+    static final String PREWARM_DELAYED = "delayed";
+
+    private static final String PREFS_NAME = "flutter_overlay_window";
+    private static final String PREF_PREWARM = "prewarm_policy";
+    private static final String PREF_PREWARM_DELAY_MS = "prewarm_delay_ms";
+    private static final long DEFAULT_PREWARM_DELAY_MS = 3000;
+
+    private static FlutterEngineGroup group;
+    private static final Map<String, FlutterEngine> engines = new HashMap<>();
+    @Nullable private static FlutterEngine standby;
+    // The standby's Dart side listens for shareData; attached to a relay once promoted.
+    @Nullable private static BinaryMessenger standbyMessenger;
+    private static boolean keepStandby = false;
+    private static boolean standbyScheduled = false;
+
+    // Stats
+    private static int spawnCount = 0;
+    private static long lastSpawnMs = -1;
+    private static long lastSpawnNativeBytes = -1;
+    private static int standbyHits = 0;
+
+    // Startup timeline of each spawned engine, dropped with the engine
+    private static final Map<FlutterEngine, Timeline> timelines = new HashMap<>();
+    private static long lastShowToFrameMs = -1;
+    private static boolean prewarmScheduled = false;
+
+    /** When one engine got to each startup step, SystemClock.elapsedRealtime() or -1 if it didn't yet. */
+    private static final class Timeline implements FlutterUiDisplayListener {
+        long createStartedAt = -1;
+        long createdAt = -1;
+        long dartStartedAt = -1;
+        long firstFrameAt = -1;
+        long showRequestedAt = -1;
+        long showToFrameMs = -1;
+
+        @Override
+        public void onFlutterUiDisplayed() {
+            long now = SystemClock.elapsedRealtime();
+            if (firstFrameAt < 0) firstFrameAt = now;
+            if (showRequestedAt >= 0) {
+                showToFrameMs = now - showRequestedAt;
+                lastShowToFrameMs = showToFrameMs;
+                OverlayMetrics.showToFirstFrameMs.record(showToFrameMs);
+                showRequestedAt = -1;
+                Log.d(TAG, "overlay first frame " + showToFrameMs + "ms after show");
+            }
+        }
+
+        @Override
+        public void onFlutterUiNoLongerDisplayed() {}
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("engineCreateStartedAt", createStartedAt);
+            map.put("engineCreatedAt", createdAt);
+            map.put("dartStartedAt", dartStartedAt);
+            map.put("firstFrameAt", firstFrameAt);
+            map.put("lastShowToFirstFrameMs", showToFrameMs);
+            return map;
+        }
+    }
+
+    @NonNull
+    static FlutterEngineGroup group(@NonNull Context context) {
+        if (group == null) group = new FlutterEngineGroup(context.getApplicationContext());
+        return group;
+    }
+
+    static String engineTag(@NonNull String overlayId) {
+        return WindowSetup.DEFAULT_ID.equals(overlayId)
+                ? OverlayConstants.CACHED_TAG
+                : OverlayConstants.CACHED_TAG + ":" + overlayId;
+    }
+
+    @NonNull
+    static FlutterEngine obtainOverlayEngine(@NonNull Context context) {
+        return obtainOverlayEngine(context, WindowSetup.DEFAULT_ID);
+    }
+
+    /** Returns the overlay's cached engine, creating (or promoting the standby) if needed. */
+    @NonNull
+    static FlutterEngine obtainOverlayEngine(@NonNull Context context, @NonNull String overlayId) {
+        String tag = engineTag(overlayId);
+        FlutterEngine engine = FlutterEngineCache.getInstance().get(tag);
+        if (engine != null) {
+            engines.put(overlayId, engine);
+            return engine;
+        }
+
+        BinaryMessenger listening = null;
+        if (standby != null) {
+            engine = standby;
+            listening = standbyMessenger;
+            standby = null;
+            standbyMessenger = null;
+            standbyHits++;
+            SharedBuffers.transferOwner(STANDBY_ID, overlayId);
+        } else {
+            engine = spawn(context);
+        }
+        FlutterEngineCache.getInstance().put(tag, engine);
+        engines.put(overlayId, engine);
+        if (listening != null) {
+            MessageRelay.toOverlay(overlayId).attach(listening);
+        }
+        if (keepStandby) scheduleStandby(context);
+        return engine;
+    }
+
+    @VisibleForTesting
+    static int engineCount() {
+        return engines.size();
+    }
+
+    /** Forgets every engine and the group, as in a new process. */
+    @VisibleForTesting
+    static void resetForTesting() {
+        engines.clear();
+        timelines.clear();
+        lastShowToFrameMs = -1;
+        group = null;
+        standby = null;
+        standbyMessenger = null;
+        keepStandby = false;
+        standbyScheduled = false;
+        prewarmScheduled = false;
+    }
+
+    @Nullable
+    static FlutterEngine engineFor(@NonNull String overlayId) {
+        return engines.get(overlayId);
+    }
+
+    /**
+     * Overlay id the engine was spawned for, {@link #STANDBY_ID} for the standby, or null if
+     * it isn't an overlay engine.
+     */
+    @Nullable
+    static String overlayIdOf(@Nullable FlutterEngine engine) {
+        if (engine == null) return null;
+        if (engine == standby) return STANDBY_ID;
+        for (Map.Entry<String, FlutterEngine> e : engines.entrySet()) {
+            if (e.getValue() == engine) return e.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Destroys the engine of a closed overlay. The default overlay's engine stays cached
+     * so the next show is fast, as before multiple overlays existed.
+     */
+    static void release(@NonNull String overlayId) {
+        if (WindowSetup.DEFAULT_ID.equals(overlayId)) return;
+        FlutterEngine engine = engines.remove(overlayId);
+        FlutterEngineCache.getInstance().remove(engineTag(overlayId));
+        if (engine != null) {
+            timelines.remove(engine);
+            engine.destroy();
+        }
+    }
+
+    /** Starts the overlay engine according to the persisted prewarm policy. */
+    static void prewarm(@NonNull Context context) {
+        if (prewarmScheduled || FlutterEngineCache.getInstance().get(OverlayConstants.CACHED_TAG) != null) return;
+        final Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = prefs(appContext);
+        String policy = prefs.getString(PREF_PREWARM, PREWARM_EAGER);
+        switch (policy) {
+            case PREWARM_ON_SHOW:
+                return;
+            case PREWARM_IDLE:
+                prewarmScheduled = true;
+                Looper.myQueue().addIdleHandler(() -> {
+                    prewarmScheduled = false;
+                    obtainOverlayEngine(appContext);
+                    return false;
+                });
+                return;
+            case PREWARM_DELAYED:
+                prewarmScheduled = true;
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    prewarmScheduled = false;
+                    obtainOverlayEngine(appContext);
+                }, prefs.getLong(PREF_PREWARM_DELAY_MS, DEFAULT_PREWARM_DELAY_MS));
+                return;
+            default:
+                obtainOverlayEngine(appContext);
+        }
+    }
+
+    static void setPrewarmPolicy(@NonNull Context context, @Nullable String policy, long delayMs) {
+        if (!PREWARM_ON_SHOW.equals(policy) && !PREWARM_IDLE.equals(policy) && !PREWARM_DELAYED.equals(policy)) {
+            policy = PREWARM_EAGER;
+        }
+        prefs(context).edit()
+                .putString(PREF_PREWARM, policy)
+                .putLong(PREF_PREWARM_DELAY_MS, delayMs >= 0 ? delayMs : DEFAULT_PREWARM_DELAY_MS)
+                .apply();
+    }
+
+    private static SharedPreferences prefs(@NonNull Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** The standby's Dart side listens for shareData on {@code messenger}, or stopped to. */
+    static void setStandbyMessenger(@Nullable BinaryMessenger messenger) {
+        standbyMessenger = messenger;
+    }
+
+    /** {@code engine} is about to get a new surface; its first frame on it is timed. */
+    static void markShowRequested(@NonNull FlutterEngine engine) {
+        Timeline timeline = timelines.get(engine);
+        if (timeline != null) timeline.showRequestedAt = SystemClock.elapsedRealtime();
+    }
+
+    /** The overlay entrypoint of {@code engine} started running, as reported by its Dart side. */
+    static void markDartStarted(@NonNull FlutterEngine engine) {
+        Timeline timeline = timelines.get(engine);
+        if (timeline != null && timeline.dartStartedAt < 0) {
+            timeline.dartStartedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /** Spawns a new engine running the overlay entrypoint from the shared group. */
+    @NonNull
+    static FlutterEngine spawn(@NonNull Context context) {
+        // Creating the group initializes the FlutterLoader, which the bundle path needs
+        // in a process where no engine ran yet (a sticky restart, an early prewarm).
+        FlutterEngineGroup engineGroup = group(context);
+        DartExecutor.DartEntrypoint entrypoint = new DartExecutor.DartEntrypoint(
+                FlutterInjector.instance().flutterLoader().findAppBundlePath(),
+                OVERLAY_ENTRYPOINT);
+        long nativeBefore = Debug.getNativeHeapAllocatedSize();
+        long start = SystemClock.elapsedRealtime();
+        FlutterEngine engine = engineGroup.createAndRunEngine(context.getApplicationContext(), entrypoint);
+        long end = SystemClock.elapsedRealtime();
+        lastSpawnMs = end - start;
+        Timeline timeline = new Timeline();
+        timeline.createStartedAt = start;
+        timeline.createdAt = end;
+        timelines.put(engine, timeline);
+        engine.getRenderer().addIsDisplayingFlutterUiListener(timeline);
+        // Approximation: the native heap growth across the spawn is dominated by the engine.
+        lastSpawnNativeBytes = Debug.getNativeHeapAllocatedSize() - nativeBefore;
+        spawnCount++;
+        Log.d(TAG, "spawned overlay engine in " + lastSpawnMs + "ms (~" + (lastSpawnNativeBytes / 1024) + "KiB native)");
+        return engine;
+    }
+
+    static void setKeepStandby(@NonNull Context context, boolean enabled) {
+        keepStandby = enabled;
+        if (enabled) {
+            scheduleStandby(context);
+        } else if (standby != null) {
+            timelines.remove(standby);
+            standby.destroy();
+            standby = null;
+            standbyMessenger = null;
+        }
+    }
+
+    /** Warms the standby engine once the main thread has nothing else to do. */
+    private static void scheduleStandby(@NonNull Context context) {
+        if (standby != null || standbyScheduled) return;
+        standbyScheduled = true;
+        final Context appContext = context.getApplicationContext();
+        Looper.myQueue().addIdleHandler(() -> {
+            standbyScheduled = false;
+            if (keepStandby && standby == null) standby = spawn(appContext);
+            return false;
+        });
+    }
+
+    static Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("spawnCount", spawnCount);
+        stats.put("lastSpawnMs", lastSpawnMs);
+        stats.put("lastSpawnNativeBytes", lastSpawnNativeBytes);
+        stats.put("standbyReady", standby != null);
+        stats.put("standbyHits", standbyHits);
+        stats.put("lastShowToFirstFrameMs", lastShowToFrameMs);
+        Map<String, Object> byOverlay = new HashMap<>();
+        for (Map.Entry<FlutterEngine, Timeline> e : timelines.entrySet()) {
+            String overlayId = overlayIdOf(e.getKey());
+            if (overlayId != null) byOverlay.put(overlayId, e.getValue().toMap());
+        }
+        stats.put("timelines", byOverlay);
+        return stats;
+    }
+}
@@ -0,0 +1,870 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.WindowManager;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.embedding.android.FlutterSurfaceView;
+import io.flutter.embedding.android.FlutterTextureView;
+import io.flutter.embedding.android.FlutterView;
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * One overlay window: its engine, {@link FlutterView}, layout params and drag handling.
+ * {@link OverlayService} owns one of these per overlay id.
+ */
+final class OverlayHost implements View.OnTouchListener {
+
+    private static final String TAG = "OverlayHost";
+
+    private static final int TOUCHABLE_FLAGS =
+            WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                    | WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
+                    | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS
+                    | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                    | WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR
+                    | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
+
+    private static final float MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER = 0.8f;
+
+    private static final int CLICK_TOLERANCE_PX = 10;
+
+    final String id;
+    final WindowSetup setup;
+
+    private final OverlayService service;
+    private final WindowManager windowManager;
+    private FlutterEngine engine;
+    private FlutterView flutterView;
+    private MethodChannel flutterChannel;
+    private String renderMode;
+
+    // How showOverlay on this overlay was served
+    private int fastPathShows = 0;
+    private int rebuildShows = 0;
+    private boolean lastShowRebuilt = false;
+
+    // hideOverlay: window kept attached, fully transparent and not touchable
+    private boolean hidden = false;
+    private float visibleAlpha = 1f;
+
+    // Engine lifecycle: paused while nobody can see the overlay
+    private boolean renderingPaused = false;
+    private long pausedSince = 0;
+    private long pausedMs = 0;
+    private int pauses = 0;
+
+    private float lastX, lastY;
+    private boolean dragging;
+    private boolean touching;
+    private long downTime = 0;
+    private float downX = 0f, downY = 0f;
+    private int dragSignX = 1, dragSignY = 1;
+    private final DragCoalescer dragCoalescer;
+
+    // Content bounds reported in fitContent mode, applied at most once per frame
+    private int contentWidthPx = -1, contentHeightPx = -1;
+    private int pendingLeftPx, pendingTopPx, pendingWidthPx, pendingHeightPx;
+    private boolean contentFitScheduled = false;
+    private final Choreographer.FrameCallback contentFitCallback = frameTimeNanos -> applyContentBounds();
+
+    private final OverlayAnimator windowAnimator = new OverlayAnimator();
+    private final OverlayAnimator.Listener snapListener = new OverlayAnimator.Listener() {
+        @Override
+        public void onFrame(int x, int y, int width, int height) {
+            if (flutterView == null) return;
+            WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+            p.x = x;
+            p.y = y;
+            updateLayout(p);
+        }
+
+        @Override
+        public void onEnd(boolean finished) {
+            if (finished) geometryEvents.settled();
+        }
+    };
+    private final GeometryEvents geometryEvents = new GeometryEvents(this::geometryEvent);
+
+    OverlayHost(OverlayService service, WindowManager windowManager, String id) {
+        this.service = service;
+        this.windowManager = windowManager;
+        this.id = id;
+        this.setup = WindowSetup.of(id);
+        this.dragCoalescer = new DragCoalescer((dx, dy) -> {
+            if (flutterView == null) return;
+            WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+            p.x += dx * dragSignX;
+            p.y += dy * dragSignY;
+            updateLayout(p);
+        });
+    }
+
+    boolean isAttached() {
+        return flutterView != null;
+    }
+
+    /**
+     * Shows this overlay with the current {@link WindowSetup}. If the window is already
+     * attached to the same engine with the same render surface, its layout params are
+     * updated in place (one layout pass, no new surface); otherwise the view is built from
+     * scratch.
+     *
+     * @return true if the view had to be rebuilt
+     */
+    boolean show(int startX, int startY) {
+        int dx = startX == OverlayConstants.DEFAULT_XY ? 0 : startX;
+        int dy = startY == OverlayConstants.DEFAULT_XY ? -service.statusBarHeightPx() : startY;
+        // Showing a hidden overlay brings it back with its flags and alpha.
+        return showAt((dx == -1999 || dx == -1) ? -1 : service.dpToPx(dx), service.dpToPx(dy), false);
+    }
+
+    /**
+     * Shows this overlay at a window position saved by {@link #snapshot()}, hidden again
+     * if it was hidden, without an extra layout pass.
+     */
+    boolean restore(int xPx, int yPx, boolean hide) {
+        return showAt(xPx, yPx, hide);
+    }
+
+    private boolean showAt(int xPx, int yPx, boolean hide) {
+        FlutterEngine next = OverlayEngines.obtainOverlayEngine(service, id);
+
+        boolean unhide = hidden && !hide;
+        hidden = hide;
+        boolean rebuild = flutterView == null || engine != next
+                || !setup.resolvedRenderMode().equals(renderMode);
+        if (rebuild) {
+            rebuildView(next, xPx, yPx);
+            rebuildShows++;
+        } else {
+            windowAnimator.cancel();
+            dragCoalescer.cancel();
+            WindowManager.LayoutParams params = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+            // applySetup only sets alpha on API 31+; below that it is still 0 from keepHidden.
+            if (unhide) params.alpha = visibleAlpha;
+            applySetup(params);
+            params.x = xPx;
+            params.y = yPx;
+            updateLayout(params);
+            fastPathShows++;
+        }
+        lastShowRebuilt = rebuild;
+        // The engine may be new or restarted, so its lifecycle is always re-sent.
+        updateRendering(true);
+        service.stateChanged();
+        Log.d(TAG, "show " + id + ": " + (rebuild ? "full rebuild" : "updated in place"));
+        return rebuild;
+    }
+
+    private void rebuildView(FlutterEngine next, int xPx, int yPx) {
+        removeView();
+        // Only a new surface produces a "first frame" worth timing.
+        OverlayEngines.markShowRequested(next);
+
+        if (engine != next || flutterChannel == null) {
+            if (flutterChannel != null) flutterChannel.setMethodCallHandler(null);
+            engine = next;
+            flutterChannel = new MethodChannel(engine.getDartExecutor(), OverlayConstants.OVERLAY_TAG);
+            flutterChannel.setMethodCallHandler(this::onOverlayMethodCall);
+        }
+
+        flutterView = createFlutterView();
+
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                0,
+                0,
+                0,
+                -service.statusBarHeightPx(),
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                        ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
+                        : WindowManager.LayoutParams.TYPE_PHONE,
+                TOUCHABLE_FLAGS,
+                PixelFormat.TRANSLUCENT
+        );
+        applySetup(params);
+        params.x = xPx;
+        params.y = yPx;
+
+        try {
+            windowManager.addView(flutterView, params);
+        } catch (Throwable t) {
+            Log.e(TAG, "addView failed for overlay " + id, t);
+        }
+    }
+
+    /** Builds a view for the resolved render mode and attaches it to {@link #engine}. */
+    private FlutterView createFlutterView() {
+        Context context = service.getApplicationContext();
+        renderMode = setup.resolvedRenderMode();
+        FlutterView view = OverlayConstants.RENDER_SURFACE.equals(renderMode)
+                // A transparent SurfaceView is placed on top of the window so it can blend.
+                ? new FlutterView(context, new FlutterSurfaceView(context, !setup.opaque))
+                : new FlutterView(context, new FlutterTextureView(context));
+        view.attachToFlutterEngine(engine);
+        view.setFitsSystemWindows(true);
+        view.setFocusable(true);
+        view.setFocusableInTouchMode(true);
+        view.setBackgroundColor(Color.TRANSPARENT);
+        view.setOnTouchListener(this);
+        return view;
+    }
+
+    /**
+     * Switches the render surface of a live overlay. The view is only rebuilt when the
+     * resolved surface actually changes; position and size are kept.
+     *
+     * @return true if the view was rebuilt
+     */
+    boolean setRenderMode(String mode, boolean opaque) {
+        setup.setRenderMode(mode);
+        setup.opaque = opaque;
+        if (flutterView == null || setup.resolvedRenderMode().equals(renderMode)) return false;
+
+        WindowManager.LayoutParams old = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams();
+        params.copyFrom(old);
+        removeView();
+        // A new surface, so its first frame is timed like any other rebuild.
+        OverlayEngines.markShowRequested(engine);
+        flutterView = createFlutterView();
+        try {
+            windowManager.addView(flutterView, params);
+        } catch (Throwable t) {
+            Log.e(TAG, "addView failed for overlay " + id, t);
+        }
+        rebuildShows++;
+        Log.d(TAG, "overlay " + id + " switched to " + renderMode + " rendering");
+        return true;
+    }
+
+    /** Copies size, gravity, flags and alpha from {@link WindowSetup} into {@code params}. */
+    private void applySetup(WindowManager.LayoutParams params) {
+        params.width = setup.width == -1999 ? -1 : setup.width;
+        params.height = (setup.height != -1999) ? setup.height : service.screenHeight();
+        if (setup.fitContent && contentWidthPx > 0 && contentHeightPx > 0) {
+            params.width = contentWidthPx;
+            params.height = contentHeightPx;
+        }
+        params.gravity = setup.gravity;
+        params.flags = TOUCHABLE_FLAGS;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            params.alpha = MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER;
+        }
+        if (hidden) keepHidden(params);
+    }
+
+    /** Window width in px for a size in dp; -1999 (full width) and -1 are MATCH_PARENT. */
+    private int widthPx(int width) {
+        return (width == -1999 || width == -1) ? -1 : service.dpToPx(width);
+    }
+
+    /** Window height in px for a size in dp; -1999 is the full screen height, -1 MATCH_PARENT. */
+    private int heightPx(int height) {
+        return height == -1999 ? service.screenHeight() : height == -1 ? -1 : service.dpToPx(height);
+    }
+
+    private void applyPosition(WindowManager.LayoutParams params, int x, int y) {
+        params.x = (x == -1999 || x == -1) ? -1 : service.dpToPx(x);
+        params.y = service.dpToPx(y);
+    }
+
+    int fastPathShows() {
+        return fastPathShows;
+    }
+
+    int rebuildShows() {
+        return rebuildShows;
+    }
+
+    boolean lastShowRebuilt() {
+        return lastShowRebuilt;
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("attached", flutterView != null);
+        metrics.put("renderMode", renderMode);
+        metrics.put("fastPathShows", fastPathShows);
+        metrics.put("rebuildShows", rebuildShows);
+        metrics.put("hidden", hidden);
+        metrics.put("renderingPaused", renderingPaused);
+        metrics.put("pauses", pauses);
+        metrics.put("pausedMs", pausedMs + (renderingPaused ? SystemClock.elapsedRealtime() - pausedSince : 0));
+        return metrics;
+    }
+
+    /**
+     * Pauses the engine while the overlay can't be seen (screen off or locked, window
+     * fully transparent), which stops Flutter from producing frames and ticking
+     * animations, and resumes it as soon as the overlay is visible again.
+     *
+     * @param force send the lifecycle state even if it didn't change
+     */
+    void updateRendering(boolean force) {
+        if (engine == null) return;
+        boolean pause = !service.isScreenInteractive() || isHidden();
+        if (pause == renderingPaused && !force) return;
+        long now = SystemClock.elapsedRealtime();
+        if (pause != renderingPaused) {
+            if (pause) {
+                pausedSince = now;
+                pauses++;
+            } else {
+                endPause(now);
+            }
+            renderingPaused = pause;
+        }
+        try {
+            if (pause) {
+                engine.getLifecycleChannel().appIsInactive();
+                engine.getLifecycleChannel().appIsPaused();
+            } else {
+                engine.getLifecycleChannel().appIsResumed();
+            }
+        } catch (Throwable ignored) {}
+    }
+
+    private boolean isHidden() {
+        return flutterView != null
+                && (hidden || ((WindowManager.LayoutParams) flutterView.getLayoutParams()).alpha == 0f);
+    }
+
+    /**
+     * Hides or unhides the window without detaching it: a hidden window is fully
+     * transparent and lets touches through, and its engine is paused, so unhiding is a
+     * single layout update and a lifecycle resume.
+     *
+     * @return false if the overlay isn't attached
+     */
+    boolean setHidden(boolean hide) {
+        if (flutterView == null) return false;
+        if (hide == hidden) return true;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        if (hide) {
+            windowAnimator.cancel();
+            dragCoalescer.cancel();
+            touching = false;
+            hidden = true;
+            keepHidden(p);
+        } else {
+            hidden = false;
+            p.alpha = visibleAlpha;
+            p.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        }
+        updateLayout(p);
+        updateRendering(false);
+        return true;
+    }
+
+    /** Re-applies the hidden state after {@code p}'s alpha or flags were set, keeping the alpha for unhide. */
+    private void keepHidden(WindowManager.LayoutParams p) {
+        if (p.alpha != 0f) visibleAlpha = p.alpha;
+        p.alpha = 0f;
+        p.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+    }
+
+    private void endPause(long now) {
+        long paused = now - pausedSince;
+        pausedMs += paused;
+        OverlayMetrics.renderPauseMs.record(paused);
+        Log.v(TAG, "overlay " + id + " resumed after " + paused + " ms paused");
+    }
+
+    /** What {@link OverlaySnapshot} needs to show this overlay again, or null if it isn't attached. */
+    @Nullable
+    OverlaySnapshot.Entry snapshot() {
+        if (flutterView == null) return null;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        OverlaySnapshot.Entry e = new OverlaySnapshot.Entry();
+        e.id = id;
+        e.width = setup.width;
+        e.height = setup.height;
+        e.gravity = setup.gravity;
+        e.positionGravity = setup.positionGravity;
+        e.enableDrag = setup.enableDrag;
+        e.fitContent = setup.fitContent;
+        e.opaque = setup.opaque;
+        e.renderMode = setup.renderMode;
+        e.messengerCodec = setup.messengerCodec;
+        e.hidden = hidden;
+        e.xPx = p.x;
+        e.yPx = p.y;
+        return e;
+    }
+
+    /** Removes the window and releases everything tied to it. */
+    void close() {
+        if (renderingPaused) {
+            endPause(SystemClock.elapsedRealtime());
+            renderingPaused = false;
+        }
+        removeView();
+        if (flutterChannel != null) {
+            flutterChannel.setMethodCallHandler(null);
+            flutterChannel = null;
+        }
+        engine = null;
+    }
+
+    /**
+     * In fitContent mode, shrinks the window to the content the overlay reported, in dp
+     * relative to the current window. The window is moved by the content's offset so it
+     * stays where it was on screen; the overlay is expected to lay it out at the origin of
+     * the smaller window, after which it reports the same size at offset zero and nothing
+     * changes. Reports are coalesced to one layout update per frame.
+     *
+     * @return false if the overlay isn't in fitContent mode or not attached
+     */
+    boolean setContentBounds(double left, double top, double width, double height) {
+        if (!setup.fitContent || flutterView == null) return false;
+        pendingLeftPx = service.dpToPx((int) Math.round(left));
+        pendingTopPx = service.dpToPx((int) Math.round(top));
+        pendingWidthPx = Math.max(1, (int) Math.ceil(width * service.geometry().density));
+        pendingHeightPx = Math.max(1, (int) Math.ceil(height * service.geometry().density));
+        if (!contentFitScheduled) {
+            contentFitScheduled = true;
+            Choreographer.getInstance().postFrameCallback(contentFitCallback);
+        }
+        return true;
+    }
+
+    private void applyContentBounds() {
+        contentFitScheduled = false;
+        if (flutterView == null) return;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        int windowWidth = flutterView.getWidth();
+        int windowHeight = flutterView.getHeight();
+        if (pendingLeftPx == 0 && pendingTopPx == 0
+                && pendingWidthPx == windowWidth && pendingHeightPx == windowHeight) {
+            contentWidthPx = pendingWidthPx;
+            contentHeightPx = pendingHeightPx;
+            return;
+        }
+        p.x += WindowMath.contentShift(p.gravity & Gravity.HORIZONTAL_GRAVITY_MASK, Gravity.CENTER_HORIZONTAL, Gravity.RIGHT,
+                pendingLeftPx, pendingWidthPx, windowWidth);
+        p.y += WindowMath.contentShift(p.gravity & Gravity.VERTICAL_GRAVITY_MASK, Gravity.CENTER_VERTICAL, Gravity.BOTTOM,
+                pendingTopPx, pendingHeightPx, windowHeight);
+        p.width = contentWidthPx = pendingWidthPx;
+        p.height = contentHeightPx = pendingHeightPx;
+        updateLayout(p);
+    }
+
+    /** Applies {@code params} to the attached window, timing the call for the metrics. */
+    private void updateLayout(WindowManager.LayoutParams params) {
+        long start = System.nanoTime();
+        windowManager.updateViewLayout(flutterView, params);
+        OverlayMetrics.layoutUpdateUs.record((System.nanoTime() - start) / 1000);
+        geometryEvents.changed(touching || windowAnimator.isRunning());
+        service.stateChanged();
+    }
+
+    @Nullable
+    private Map<String, Object> geometryEvent() {
+        if (flutterView == null) return null;
+        Map<String, Object> event = windowState((WindowManager.LayoutParams) flutterView.getLayoutParams());
+        event.put("overlayId", id);
+        event.put("moving", touching || windowAnimator.isRunning());
+        return event;
+    }
+
+    private void removeView() {
+        windowAnimator.cancel();
+        dragCoalescer.cancel();
+        geometryEvents.cancel();
+        if (contentFitScheduled) {
+            Choreographer.getInstance().removeFrameCallback(contentFitCallback);
+            contentFitScheduled = false;
+        }
+        if (flutterView != null) {
+            try { windowManager.removeView(flutterView); } catch (Throwable ignored) {}
+            try { flutterView.detachFromFlutterEngine(); } catch (Throwable ignored) {}
+            flutterView = null;
+        }
+    }
+
+    private void onOverlayMethodCall(MethodCall call, MethodChannel.Result result) {
+        switch (call.method) {
+            case "openApp":
+                service.openOrBringMainApp();
+                result.success(null);
+                break;
+            case "getMessengerCodec":
+                result.success(setup.messengerCodec);
+                break;
+            case "getOverlayId":
+                result.success(id);
+                break;
+            case "updateFlag": {
+                String flag = String.valueOf(call.argument("flag"));
+                result.success(updateFlag(flag));
+                break;
+            }
+            case "setContentBounds": {
+                Number left = call.argument("left");
+                Number top = call.argument("top");
+                Number width = call.argument("width");
+                Number height = call.argument("height");
+                if (width == null || height == null) {
+                    result.success(false);
+                    break;
+                }
+                result.success(setContentBounds(
+                        left == null ? 0 : left.doubleValue(), top == null ? 0 : top.doubleValue(),
+                        width.doubleValue(), height.doubleValue()));
+                break;
+            }
+            case "updateOverlayPosition": {
+                Integer x = call.argument("x");
+                Integer y = call.argument("y");
+                Number duration = call.argument("duration");
+                if (duration != null && duration.longValue() > 0) {
+                    animate(x == null ? 0 : x, y == null ? 0 : y, null, null,
+                            duration.longValue(), call.argument("curve"), result);
+                } else {
+                    result.success(move(x == null ? 0 : x, y == null ? 0 : y));
+                }
+                break;
+            }
+            case "resizeOverlay": {
+                Integer w = call.argument("width");
+                Integer h = call.argument("height");
+                Boolean drag = call.argument("enableDrag");
+                Number duration = call.argument("duration");
+                if (duration != null && duration.longValue() > 0) {
+                    setup.enableDrag = drag != null && drag;
+                    animate(null, null, w == null ? -1 : w, h == null ? -1 : h,
+                            duration.longValue(), call.argument("curve"), result);
+                } else {
+                    result.success(resize(w == null ? -1 : w, h == null ? -1 : h, drag != null && drag));
+                }
+                break;
+            }
+            case "applyTransaction":
+                result.success(applyTransaction(call));
+                break;
+            case "setHidden": {
+                Boolean hide = call.argument("hidden");
+                result.success(setHidden(hide != null && hide));
+                break;
+            }
+            case "setRenderMode": {
+                Boolean opaque = call.argument("opaque");
+                result.success(setRenderMode(call.argument("renderMode"), opaque != null && opaque));
+                break;
+            }
+            case "updateNotification": {
+                String title = call.argument("title");
+                String content = call.argument("content");
+                Integer visibility = call.argument("visibility"); // pass NotificationCompat.VISIBILITY_* from Dart via int
+                Number minIntervalMs = call.argument("minIntervalMs"); // optional, coalesces faster updates
+
+                if (title == null) title = WindowSetup.overlayTitle;
+                if (content == null) content = WindowSetup.overlayContent;
+                int vis = (visibility == null) ? WindowSetup.notificationVisibility : visibility;
+
+                // Also mirror into WindowSetup so future restarts keep the same text
+                WindowSetup.overlayTitle = title;
+                WindowSetup.overlayContent = content;
+                WindowSetup.notificationVisibility = vis;
+                if (minIntervalMs != null) WindowSetup.notificationMinIntervalMs = Math.max(0, minIntervalMs.longValue());
+
+                service.updateForegroundNotification(title, content, vis);
+                result.success(true);
+                break;
+            }
+            default:
+                result.notImplemented();
+        }
+    }
+
+    boolean updateFlag(String flag) {
+        if (flutterView == null) return false;
+        setup.setFlag(flag);
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        p.flags = TOUCHABLE_FLAGS;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) p.alpha = MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER;
+        if (hidden) keepHidden(p);
+        updateLayout(p);
+        return true;
+    }
+
+    boolean resize(int width, int height, boolean enableDrag) {
+        if (flutterView == null) return false;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        p.width = widthPx(width);
+        p.height = heightPx(height);
+        setup.enableDrag = enableDrag;
+        updateLayout(p);
+        return true;
+    }
+
+    boolean move(int x, int y) {
+        if (flutterView == null) return false;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        applyPosition(p, x, y);
+        updateLayout(p);
+        return true;
+    }
+
+    /**
+     * Animates the window to a new position and/or size in dp on the display's frame
+     * callback, one layout update per frame, then answers {@code result} with true, or
+     * with false if a drag or another animation interrupted it. Null values keep their
+     * current value; the match-parent size can't be interpolated and is applied at the end.
+     *
+     * @param curve the easing curve sampled at evenly spaced times, or null for the default
+     */
+    void animate(@Nullable Integer x, @Nullable Integer y, @Nullable Integer width, @Nullable Integer height,
+                 long durationMs, @Nullable double[] curve, final MethodChannel.Result result) {
+        if (flutterView == null) {
+            result.success(false);
+            return;
+        }
+        final WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        int fromWidth = p.width > 0 ? p.width : flutterView.getWidth();
+        int fromHeight = p.height > 0 ? p.height : flutterView.getHeight();
+
+        int toX = x == null ? p.x : (x == -1999 || x == -1) ? -1 : service.dpToPx(x);
+        int toY = y == null ? p.y : service.dpToPx(y);
+        final int endWidth = width == null ? p.width : widthPx(width);
+        final int endHeight = height == null ? p.height : heightPx(height);
+        final boolean sizeWidth = width != null && endWidth > 0;
+        final boolean sizeHeight = height != null && endHeight > 0;
+
+        float[] samples = null;
+        if (curve != null) {
+            samples = new float[curve.length];
+            for (int i = 0; i < curve.length; i++) samples[i] = (float) curve[i];
+        }
+
+        dragCoalescer.cancel();
+        windowAnimator.start(p.x, p.y, fromWidth, fromHeight,
+                toX, toY, sizeWidth ? endWidth : fromWidth, sizeHeight ? endHeight : fromHeight,
+                durationMs, OverlayAnimator.sampled(samples), new OverlayAnimator.Listener() {
+                    @Override
+                    public void onFrame(int fx, int fy, int fw, int fh) {
+                        if (flutterView == null) return;
+                        p.x = fx;
+                        p.y = fy;
+                        if (sizeWidth) p.width = fw;
+                        if (sizeHeight) p.height = fh;
+                        updateLayout(p);
+                    }
+
+                    @Override
+                    public void onEnd(boolean finished) {
+                        if (finished && flutterView != null && (p.width != endWidth || p.height != endHeight)) {
+                            p.width = endWidth;
+                            p.height = endHeight;
+                            updateLayout(p);
+                        } else if (finished) {
+                            geometryEvents.settled();
+                        }
+                        result.success(finished);
+                    }
+                });
+    }
+
+    /**
+     * Applies any subset of x/y/width/height (dp), alignment, flag, alpha and enableDrag
+     * in one layout update, so the window never shows an intermediate state.
+     *
+     * @return the resulting window state, or null if the overlay isn't attached
+     */
+    @Nullable
+    Map<String, Object> applyTransaction(MethodCall call) {
+        if (flutterView == null) return null;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        Number x = call.argument("x");
+        Number y = call.argument("y");
+        Number width = call.argument("width");
+        Number height = call.argument("height");
+        String alignment = call.argument("alignment");
+        String flag = call.argument("flag");
+        Number alpha = call.argument("alpha");
+        Boolean enableDrag = call.argument("enableDrag");
+
+        if (x != null || y != null) {
+            windowAnimator.cancel();
+            dragCoalescer.cancel();
+        }
+        if (x != null) p.x = (x.intValue() == -1999 || x.intValue() == -1) ? -1 : service.dpToPx(x.intValue());
+        if (y != null) p.y = service.dpToPx(y.intValue());
+        if (width != null) p.width = widthPx(width.intValue());
+        if (height != null) p.height = heightPx(height.intValue());
+        if (alignment != null) {
+            setup.setGravityFromAlignment(alignment);
+            p.gravity = setup.gravity;
+        }
+        if (flag != null) {
+            setup.setFlag(flag);
+            p.flags = TOUCHABLE_FLAGS;
+        }
+        if (alpha != null) {
+            float a = Math.max(0f, Math.min(1f, alpha.floatValue()));
+            p.alpha = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                    ? Math.min(a, MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER)
+                    : a;
+        }
+        if (enableDrag != null) setup.enableDrag = enableDrag;
+        if (hidden && (flag != null || alpha != null)) keepHidden(p);
+
+        if (x != null || y != null || width != null || height != null
+                || alignment != null || flag != null || alpha != null) {
+            updateLayout(p);
+        }
+        if (alpha != null) updateRendering(false);
+        // enableDrag alone doesn't touch the layout
+        service.stateChanged();
+        return windowState(p);
+    }
+
+    private Map<String, Object> windowState(WindowManager.LayoutParams p) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("x", service.pxToDp(p.x));
+        state.put("y", service.pxToDp(p.y));
+        state.put("width", p.width < 0 ? (double) p.width : service.pxToDp(p.width));
+        state.put("height", p.height < 0 ? (double) p.height : service.pxToDp(p.height));
+        state.put("alpha", (double) (hidden ? visibleAlpha : p.alpha));
+        state.put("hidden", hidden);
+        state.put("enableDrag", setup.enableDrag);
+        return state;
+    }
+
+    @Nullable
+    Map<String, Double> position() {
+        if (flutterView == null) return null;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        Map<String, Double> pos = new HashMap<>();
+        pos.put("x", service.pxToDp(p.x));
+        pos.put("y", service.pxToDp(p.y));
+        return pos;
+    }
+
+    /** Writes the window position in dp as two doubles, without building a map. */
+    boolean writePosition(ByteBuffer out) {
+        if (flutterView == null) return false;
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        out.putDouble(service.pxToDp(p.x));
+        out.putDouble(service.pxToDp(p.y));
+        return true;
+    }
+
+    /** Drag + tap detection; tap opens/relaunches app */
+    @Override
+    public boolean onTouch(View view, MotionEvent event) {
+        if (flutterView == null) return false;
+
+        WindowManager.LayoutParams params = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // Grabbing the bubble mid-snap hands control back to the finger.
+                windowAnimator.cancel();
+                dragCoalescer.begin();
+                dragging = false;
+                touching = true;
+                downTime = SystemClock.elapsedRealtime();
+                lastX = downX = event.getRawX();
+                lastY = downY = event.getRawY();
+
+                // Gravity can't change mid-gesture, so resolve the axis inversion once.
+                dragSignX = WindowMath.dragSignX(setup.gravity);
+                dragSignY = WindowMath.dragSignY(setup.gravity);
+                return true;
+
+            case MotionEvent.ACTION_MOVE: {
+                float dx = event.getRawX() - lastX;
+                float dy = event.getRawY() - lastY;
+                if (!dragging && dx * dx + dy * dy < 25) return false;
+
+                lastX = event.getRawX();
+                lastY = event.getRawY();
+
+                dragCoalescer.offer(dx, dy, event.getHistorySize());
+                dragging = true;
+                return true;
+            }
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                float totalDx = Math.abs(event.getRawX() - downX);
+                float totalDy = Math.abs(event.getRawY() - downY);
+                long dt = SystemClock.elapsedRealtime() - downTime;
+
+                if (!dragging && totalDx < CLICK_TOLERANCE_PX && totalDy < CLICK_TOLERANCE_PX && dt < 250) {
+                    touching = false;
+                    service.openOrBringMainApp();
+                    return true;
+                }
+
+                // Still "moving" for this last update: the snap may carry the window on.
+                dragCoalescer.flush();
+                touching = false;
+                if (dragging) {
+                    OverlayMetrics.recordDrag(dragCoalescer.moveEvents(),
+                            dragCoalescer.historySamples(), dragCoalescer.layoutUpdates());
+                    Log.v(TAG, "drag " + id + ": " + dragCoalescer.moveEvents() + " moves, "
+                            + dragCoalescer.coalescedUpdates() + " coalesced into "
+                            + dragCoalescer.layoutUpdates() + " layout updates");
+                }
+                snapToEdge(params);
+                if (dragging && !windowAnimator.isRunning()) geometryEvents.settled();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Animates the window to the edge selected by {@link WindowSetup#positionGravity}. */
+    private void snapToEdge(WindowManager.LayoutParams params) {
+        int destX = WindowMath.snapTargetX(setup.positionGravity, params.x, flutterView.getWidth(), service.geometry().widthPx);
+        if (destX == params.x) return;
+        windowAnimator.start(params.x, params.y, destX, params.y, OverlayAnimator.DEFAULT_DURATION_MS, snapListener);
+    }
+
+    /**
+     * The display was rotated or resized. Keeps the window where it was relative to the
+     * screen, clamped to the new bounds and snapped to the edge again, with one layout
+     * update and without rebuilding the view.
+     */
+    void onGeometryChanged(DisplayGeometry old, DisplayGeometry now) {
+        if (flutterView == null) return;
+        windowAnimator.cancel();
+        dragCoalescer.cancel();
+        WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
+        if (setup.height == -1999 && !(setup.fitContent && contentHeightPx > 0)) p.height = now.screenHeight();
+
+        int w = p.width > 0 ? p.width : flutterView.getWidth();
+        int h = p.height > 0 ? p.height : flutterView.getHeight();
+        if (p.width > 0 || p.width == WindowManager.LayoutParams.WRAP_CONTENT) {
+            boolean centered = (p.gravity & Gravity.HORIZONTAL_GRAVITY_MASK) == Gravity.CENTER_HORIZONTAL;
+            p.x = WindowMath.rescale(p.x, old.widthPx - w, now.widthPx - w, centered, 0);
+            if (!centered) p.x = WindowMath.snapTargetX(setup.positionGravity, p.x, w, now.widthPx);
+        }
+        if (p.height > 0 && p.height < now.heightPx) {
+            boolean centered = (p.gravity & Gravity.VERTICAL_GRAVITY_MASK) == Gravity.CENTER_VERTICAL;
+            // Windows are laid out in screen, so the top may tuck under the status bar.
+            p.y = WindowMath.rescale(p.y, old.heightPx - h, now.heightPx - h, centered, -now.statusBarPx);
+        }
+        updateLayout(p);
+    }
+
+}
@@ -0,0 +1,139 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide runtime counters of the overlays, read through {@code getOverlayMetrics}.
+ *
+ * Recording only bumps primitive fields and fixed histogram buckets, so it is cheap enough
+ * for the drag and frame paths; maps are only built when the metrics are read. Must only
+ * be used from the main thread.
+ */
+final class OverlayMetrics {
+    private OverlayMetrics() {}
+
+    /**
+     * Histogram with power-of-two buckets: bucket {@code i} counts values below
+     * {@code 2^i} (in the histogram's unit), the last bucket everything above.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 24;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sum;
+        private long max;
+
+        void record(long value) {
+            if (value < 0) return;
+            int bucket = 64 - Long.numberOfLeadingZeros(value);
+            buckets[Math.min(bucket, BUCKETS - 1)]++;
+            count++;
+            sum += value;
+            if (value > max) max = value;
+        }
+
+        /** Upper bound of the bucket holding the given percentile, or 0 when empty. */
+        long percentile(double p) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * p);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) return Math.min(1L << i, max);
+            }
+            return max;
+        }
+
+        long count() {
+            return count;
+        }
+
+        void reset() {
+            Arrays.fill(buckets, 0);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("avg", count == 0 ? 0 : sum / count);
+            map.put("p50", percentile(0.5));
+            map.put("p90", percentile(0.9));
+            map.put("p99", percentile(0.99));
+            map.put("max", max);
+            return map;
+        }
+    }
+
+    // Reported by the overlay isolate from the engine's FrameTiming, in microseconds
+    static final Histogram frameBuildUs = new Histogram();
+    static final Histogram frameRasterUs = new Histogram();
+    // Time spent in WindowManager.updateViewLayout, in microseconds
+    static final Histogram layoutUpdateUs = new Histogram();
+    // shareData send to reply across the relay, in microseconds
+    static final Histogram messageRoundTripUs = new Histogram();
+    // show request to first rendered frame of a new surface, in milliseconds
+    static final Histogram showToFirstFrameMs = new Histogram();
+    // How long an overlay engine stayed paused while it couldn't be seen, in milliseconds
+    static final Histogram renderPauseMs = new Histogram();
+    // Reading the snapshot and rebuilding the overlays after a sticky restart, in microseconds
+    static final Histogram snapshotRestoreUs = new Histogram();
+
+    private static long dragGestures;
+    private static long dragMoveEvents;
+    private static long dragHistorySamples;
+    private static long dragLayoutUpdates;
+
+    static void recordDrag(int moveEvents, int historySamples, int layoutUpdates) {
+        dragGestures++;
+        dragMoveEvents += moveEvents;
+        dragHistorySamples += historySamples;
+        dragLayoutUpdates += layoutUpdates;
+    }
+
+    static void reset() {
+        frameBuildUs.reset();
+        frameRasterUs.reset();
+        layoutUpdateUs.reset();
+        messageRoundTripUs.reset();
+        showToFirstFrameMs.reset();
+        renderPauseMs.reset();
+        snapshotRestoreUs.reset();
+        dragGestures = 0;
+        dragMoveEvents = 0;
+        dragHistorySamples = 0;
+        dragLayoutUpdates = 0;
+        MessageRelay.resetCounts();
+        SharedBuffers.resetCounts();
+    }
+
+    static Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("frameBuildUs", frameBuildUs.toMap());
+        metrics.put("frameRasterUs", frameRasterUs.toMap());
+        metrics.put("layoutUpdateUs", layoutUpdateUs.toMap());
+        metrics.put("messageRoundTripUs", messageRoundTripUs.toMap());
+        metrics.put("showToFirstFrameMs", showToFirstFrameMs.toMap());
+        metrics.put("renderPauseMs", renderPauseMs.toMap());
+        metrics.put("snapshotRestoreUs", snapshotRestoreUs.toMap());
+
+        Map<String, Object> drag = new HashMap<>();
+        drag.put("gestures", dragGestures);
+        drag.put("moveEvents", dragMoveEvents);
+        drag.put("historySamples", dragHistorySamples);
+        drag.put("layoutUpdates", dragLayoutUpdates);
+        metrics.put("drag", drag);
+
+        metrics.put("messages", MessageRelay.totals());
+        metrics.put("sharedBuffers", SharedBuffers.stats());
+        metrics.put("mergedCommands", OverlayCommands.mergedCount());
+        metrics.put("engine", OverlayEngines.stats());
+        metrics.put("overlays", OverlayService.hostMetrics());
+        return metrics;
+    }
+}
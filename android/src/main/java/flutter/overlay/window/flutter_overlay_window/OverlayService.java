@@ -1,90 +1,79 @@
 package flutter.overlay.window.flutter_overlay_window;
 
 import android.app.ActivityManager;
+import android.app.KeyguardManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.content.res.Resources;
-import android.graphics.Color;
-import android.graphics.PixelFormat;
-import android.graphics.Point;
+import android.hardware.display.DisplayManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
-import android.util.DisplayMetrics;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.text.TextUtils;
 import android.util.Log;
-import android.util.TypedValue;
 import android.view.Display;
-import android.view.Gravity;
-import android.view.MotionEvent;
-import android.view.View;
 import android.view.WindowManager;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.app.NotificationCompat;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import io.flutter.FlutterInjector;
-import io.flutter.embedding.android.FlutterTextureView;
-import io.flutter.embedding.android.FlutterView;
-import io.flutter.embedding.engine.FlutterEngine;
-import io.flutter.embedding.engine.FlutterEngineCache;
-import io.flutter.embedding.engine.FlutterEngineGroup;
-import io.flutter.embedding.engine.dart.DartExecutor;
-import io.flutter.plugin.common.BasicMessageChannel;
-import io.flutter.plugin.common.JSONMessageCodec;
+
+import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
-public class OverlayService extends Service implements View.OnTouchListener {
+public class OverlayService extends Service {
 
     private static final String TAG = "OverlayService";
 
-    private final int DEFAULT_NAV_BAR_HEIGHT_DP = 48;
-    private final int DEFAULT_STATUS_BAR_HEIGHT_DP = 25;
-
-    private Integer mStatusBarHeight = -1;
-    private Integer mNavigationBarHeight = -1;
     private Resources mResources;
 
     private static OverlayService instance;
     public static boolean isRunning = false;
 
     private WindowManager windowManager = null;
-    private FlutterView flutterView;
-    private MethodChannel flutterChannel;
-    private BasicMessageChannel<Object> overlayMessageChannel;
-
-    private static final int TOUCHABLE_FLAGS =
-            WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                    | WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
-                    | WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS
-                    | WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
-                    | WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR
-                    | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED;
-
-    private static final float MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER = 0.8f;
-
-    private final Handler mAnimationHandler = new Handler();
-    private float lastX, lastY;
-    private int lastYPosition;
-    private boolean dragging;
-    private final Point szWindow = new Point();
-    private Timer mTrayAnimationTimer;
-    private TrayAnimationTimerTask mTrayTimerTask;
-
-    private static final int CLICK_TOLERANCE_PX = 10;
-    private long downTime = 0;
-    private float downX = 0f, downY = 0f;
+    private final Map<String, OverlayHost> hosts = new LinkedHashMap<>();
+    private boolean stopping = false;
+    // Rebuilt only on configuration or display changes
+    private DisplayGeometry geometry;
+    private DisplayManager.DisplayListener displayListener;
+    // False while the screen is off or locked; overlay engines are paused meanwhile
+    private boolean screenInteractive = true;
+    private BroadcastReceiver screenReceiver;
+    private OverlaySnapshot snapshot;
+
+    // Foreground notification: built once, then only re-posted when its text changes,
+    // at most once per WindowSetup.notificationMinIntervalMs (the latest values win).
+    private NotificationCompat.Builder notificationBuilder;
+    private boolean notificationChannelCreated = false;
+    private boolean foregroundStarted = false;
+    private String shownTitle, shownContent;
+    private int shownVisibility;
+    private String pendingTitle, pendingContent;
+    private int pendingVisibility;
+    private boolean notificationPending = false;
+    private long lastNotificationAt = 0;
+    private final Handler notificationHandler = new Handler(Looper.getMainLooper());
+    private final Runnable postPendingNotification = this::postPendingNotification;
 
     @Nullable @Override
     public IBinder onBind(Intent intent) { return null; }
@@ -93,12 +82,20 @@ public class OverlayService extends Service implements View.OnTouchListener {
     @Override
     public void onDestroy() {
         Log.d(TAG, "Destroying the overlay window service");
-        if (windowManager != null && flutterView != null) {
-            try { windowManager.removeView(flutterView); } catch (Throwable ignored) {}
-            windowManager = null;
-            try { flutterView.detachFromFlutterEngine(); } catch (Throwable ignored) {}
-            flutterView = null;
+        for (String id : new ArrayList<>(hosts.keySet())) closeHost(id);
+        // Destroyed on purpose (closeOverlay or stopService), so don't come back on a restart.
+        if (snapshot != null) snapshot.clear();
+        notificationHandler.removeCallbacks(postPendingNotification);
+        if (displayListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            DisplayManager dm = (DisplayManager) getSystemService(Context.DISPLAY_SERVICE);
+            if (dm != null) dm.unregisterDisplayListener(displayListener);
+            displayListener = null;
+        }
+        if (screenReceiver != null) {
+            unregisterReceiver(screenReceiver);
+            screenReceiver = null;
         }
+        windowManager = null;
         isRunning = false;
         NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         if (nm != null) nm.cancel(OverlayConstants.NOTIFICATION_ID);
@@ -106,35 +103,86 @@ public class OverlayService extends Service implements View.OnTouchListener {
         super.onDestroy();
     }
 
-    private void updateForegroundNotification(String title, String content, int visibility) {
-        // Ensure channel exists (safe to call repeatedly)
+    void updateForegroundNotification(String title, String content, int visibility) {
+        stateChanged();
+        pendingTitle = title;
+        pendingContent = content;
+        pendingVisibility = visibility;
+
+        if (foregroundStarted && isShown(title, content, visibility)) {
+            // Nothing to change; also drops a pending update this one reverted.
+            notificationHandler.removeCallbacks(postPendingNotification);
+            notificationPending = false;
+            return;
+        }
+
+        long wait = lastNotificationAt + WindowSetup.notificationMinIntervalMs - SystemClock.elapsedRealtime();
+        if (!foregroundStarted || wait <= 0) {
+            notificationHandler.removeCallbacks(postPendingNotification);
+            postPendingNotification();
+        } else if (!notificationPending) {
+            notificationPending = true;
+            notificationHandler.postDelayed(postPendingNotification, wait);
+        }
+    }
+
+    private boolean isShown(String title, String content, int visibility) {
+        return TextUtils.equals(title, shownTitle)
+                && TextUtils.equals(content, shownContent)
+                && visibility == shownVisibility;
+    }
+
+    private void postPendingNotification() {
+        notificationPending = false;
+        if (foregroundStarted && isShown(pendingTitle, pendingContent, pendingVisibility)) return;
+
+        Notification notification = notificationBuilder()
+                .setContentTitle(pendingTitle)
+                .setContentText(pendingContent)
+                .setVisibility(pendingVisibility)
+                .build();
+
+        if (!foregroundStarted) {
+            startForeground(OverlayConstants.NOTIFICATION_ID, notification);
+            foregroundStarted = true;
+        } else {
+            NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            if (nm != null) nm.notify(OverlayConstants.NOTIFICATION_ID, notification);
+        }
+        shownTitle = pendingTitle;
+        shownContent = pendingContent;
+        shownVisibility = pendingVisibility;
+        lastNotificationAt = SystemClock.elapsedRealtime();
+    }
+
+    /** Channel, tap intent and icon are resolved once per service instance. */
+    private NotificationCompat.Builder notificationBuilder() {
+        if (notificationBuilder != null) return notificationBuilder;
         createNotificationChannel();
-    
-        Intent notificationIntent = new Intent(this, com.joharride.driver.MainActivity.class)
+
+        // Tapping opens the host app, whatever its launcher activity is called.
+        Intent notificationIntent = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (notificationIntent == null) notificationIntent = new Intent().setPackage(getPackageName());
+        notificationIntent
                 .setAction(Intent.ACTION_MAIN)
                 .addCategory(Intent.CATEGORY_LAUNCHER);
         int pendingFlags = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
                 ? PendingIntent.FLAG_IMMUTABLE
                 : PendingIntent.FLAG_UPDATE_CURRENT;
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, pendingFlags);
-    
+
         int notifyIcon = getDrawableResourceId("mipmap", "launcher");
-        Notification notification = new NotificationCompat.Builder(this, OverlayConstants.CHANNEL_ID)
-                .setContentTitle(title)
-                .setContentText(content)
+        notificationBuilder = new NotificationCompat.Builder(this, OverlayConstants.CHANNEL_ID)
                 .setSmallIcon(notifyIcon == 0 ? R.drawable.notification_icon : notifyIcon)
                 .setContentIntent(pendingIntent)                 // <— keep tap-to-open
-                .setVisibility(visibility)
                 .setCategory(Notification.CATEGORY_SERVICE)
                 .setOnlyAlertOnce(true)
-                .setOngoing(true)
-                .build();
-    
-        startForeground(OverlayConstants.NOTIFICATION_ID, notification);
-    }    
+                .setOngoing(true);
+        return notificationBuilder;
+    }
 
     /** Bring task to front if present; else relaunch the app from launcher. */
-    private void openOrBringMainApp() {
+    void openOrBringMainApp() {
         try {
             final String appId = getApplicationContext().getPackageName();
             ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
@@ -174,32 +222,44 @@ public class OverlayService extends Service implements View.OnTouchListener {
     @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent == null) {
-            Log.e(TAG, "onStartCommand: Intent is null!");
-            return START_STICKY;
+        // A start delivered to this instance means the system kept it running.
+        stopping = false;
+        // Sticky restart after the process was killed: the statics are gone.
+        if (intent == null && !restoreSnapshot()) {
+            Log.d(TAG, "restarted without a snapshot, nothing to restore");
         }
-
-        mResources = getApplicationContext().getResources();
-
-        boolean isCloseWindow = intent.getBooleanExtra(OverlayConstants.INTENT_EXTRA_IS_CLOSE_WINDOW, false);
-        if (isCloseWindow) {
-            if (windowManager != null && flutterView != null) {
-                try { windowManager.removeView(flutterView); } catch (Throwable ignored) {}
-                windowManager = null;
-                try { flutterView.detachFromFlutterEngine(); } catch (Throwable ignored) {}
-            }
+        OverlayCommands.drain();
+        if (hosts.isEmpty() && !stopping) {
             isRunning = false;
-            return START_STICKY;
+            stopService();
         }
+        return START_STICKY;
+    }
 
-        if (windowManager != null && flutterView != null) {
-            try { windowManager.removeView(flutterView); } catch (Throwable ignored) {}
-            windowManager = null;
-            try { flutterView.detachFromFlutterEngine(); } catch (Throwable ignored) {}
-        }
+    /**
+     * Whether the service is up and can apply {@link OverlayCommands} right away. Not once
+     * it is stopping: anything applied then would be wiped by onDestroy, so commands wait
+     * for the next start instead.
+     */
+    static boolean isCreated() {
+        return instance != null && !instance.stopping;
+    }
+
+    /** stopSelf() only schedules onDestroy; until then this instance takes no commands. */
+    private void stopService() {
+        stopping = true;
+        stopSelf();
+    }
+
+    /** Shows {@code overlayId} with its current {@link WindowSetup}; see {@link OverlayHost#show}. */
+    static void show(String overlayId, int startX, int startY) {
+        if (instance != null) instance.showHost(overlayId, startX, startY);
+    }
 
+    private void showHost(String overlayId, int startX, int startY) {
         isRunning = true;
-        Log.d(TAG, "Service started");
+        Log.d(TAG, "showing overlay " + overlayId);
+        mResources = getApplicationContext().getResources();
 
         createNotificationChannel();
         updateForegroundNotification(
@@ -208,224 +268,269 @@ public class OverlayService extends Service implements View.OnTouchListener {
             WindowSetup.notificationVisibility
         );
 
-        // Ensure a FlutterEngine for the overlay entrypoint
-        FlutterEngine engine = FlutterEngineCache.getInstance().get(OverlayConstants.CACHED_TAG);
-        if (engine == null) {
-            FlutterEngineGroup group = new FlutterEngineGroup(this);
-            DartExecutor.DartEntrypoint entryPoint = new DartExecutor.DartEntrypoint(
-                    FlutterInjector.instance().flutterLoader().findAppBundlePath(),
-                    "overlayMain" // Dart entrypoint
-            );
-            engine = group.createAndRunEngine(this, entryPoint);
-            FlutterEngineCache.getInstance().put(OverlayConstants.CACHED_TAG, engine);
-        } else {
-            try { engine.getLifecycleChannel().appIsResumed(); } catch (Throwable ignored) {}
+        if (windowManager == null) windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+
+        OverlayHost host = hosts.get(overlayId);
+        if (host == null) {
+            host = new OverlayHost(this, windowManager, overlayId);
+            hosts.put(overlayId, host);
         }
+        host.show(startX, startY);
+    }
 
-        // Channels
-        flutterChannel = new MethodChannel(engine.getDartExecutor(), OverlayConstants.OVERLAY_TAG);
-        overlayMessageChannel = new BasicMessageChannel<>(
-                engine.getDartExecutor(), OverlayConstants.MESSENGER_TAG, JSONMessageCodec.INSTANCE);
-
-        // Allow Dart to tell us to open the app
-        flutterChannel.setMethodCallHandler((call, result) -> {
-            switch (call.method) {
-                case "openApp":
-                    openOrBringMainApp();
-                    result.success(null);
-                    break;
-                case "updateFlag": {
-                    String flag = String.valueOf(call.argument("flag"));
-                    updateOverlayFlag(result, flag);
-                    break;
-                }
-                case "updateOverlayPosition": {
-                    Integer x = call.argument("x");
-                    Integer y = call.argument("y");
-                    moveOverlay(x == null ? 0 : x, y == null ? 0 : y, result);
-                    break;
-                }
-                case "resizeOverlay": {
-                    Integer w = call.argument("width");
-                    Integer h = call.argument("height");
-                    Boolean drag = call.argument("enableDrag");
-                    resizeOverlay(w == null ? -1 : w, h == null ? -1 : h, drag != null && drag, result);
-                    break;
-                }
-                case "updateNotification": {
-                    String title = call.argument("title");
-                    String content = call.argument("content");
-                    Integer visibility = call.argument("visibility"); // pass NotificationCompat.VISIBILITY_* from Dart via int
-                
-                    if (title == null) title = WindowSetup.overlayTitle;
-                    if (content == null) content = WindowSetup.overlayContent;
-                    int vis = (visibility == null) ? WindowSetup.notificationVisibility : visibility;
-                
-                    // Also mirror into WindowSetup so future restarts keep the same text
-                    WindowSetup.overlayTitle = title;
-                    WindowSetup.overlayContent = content;
-                    WindowSetup.notificationVisibility = vis;
-                
-                    updateForegroundNotification(title, content, vis);
-                    result.success(true);
-                    break;
-                }                
-                default:
-                    result.notImplemented();
-            }
-        });
-
-        // View
-        windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
-        flutterView = new FlutterView(getApplicationContext(), new FlutterTextureView(getApplicationContext()));
-        flutterView.attachToFlutterEngine(engine);
-        flutterView.setFitsSystemWindows(true);
-        flutterView.setFocusable(true);
-        flutterView.setFocusableInTouchMode(true);
-        flutterView.setBackgroundColor(Color.TRANSPARENT);
-        flutterView.setOnTouchListener(this);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            windowManager.getDefaultDisplay().getSize(szWindow);
-        } else {
-            DisplayMetrics dm = new DisplayMetrics();
-            windowManager.getDefaultDisplay().getMetrics(dm);
-            szWindow.set(dm.widthPixels, dm.heightPixels);
+    /**
+     * Closes one overlay, and stops the service once none is left.
+     *
+     * @return false if the overlay wasn't shown
+     */
+    static boolean close(String overlayId) {
+        if (!isActive(overlayId)) return false;
+        instance.closeHost(overlayId);
+        if (instance.hosts.isEmpty()) {
+            isRunning = false;
+            instance.stopService();
         }
+        return true;
+    }
 
-        int startX = intent.getIntExtra("startX", OverlayConstants.DEFAULT_XY);
-        int startY = intent.getIntExtra("startY", OverlayConstants.DEFAULT_XY);
-        int dx = startX == OverlayConstants.DEFAULT_XY ? 0 : startX;
-        int dy = startY == OverlayConstants.DEFAULT_XY ? -statusBarHeightPx() : startY;
-
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowSetup.width == -1999 ? -1 : WindowSetup.width,
-                (WindowSetup.height != -1999) ? WindowSetup.height : screenHeight(),
-                0,
-                -statusBarHeightPx(),
-                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
-                        ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY
-                        : WindowManager.LayoutParams.TYPE_PHONE,
-                TOUCHABLE_FLAGS,
-                PixelFormat.TRANSLUCENT
-        );
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            params.alpha = MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER;
+    /** Closes every overlay and stops the service; false if it wasn't running. */
+    static boolean closeAll() {
+        if (instance == null || !isRunning) return false;
+        for (String id : new ArrayList<>(instance.hosts.keySet())) instance.closeHost(id);
+        isRunning = false;
+        instance.stopService();
+        return true;
+    }
+
+    /**
+     * Rebuilds the overlays saved in the snapshot, with their configuration, position and
+     * hidden state.
+     *
+     * @return false if there was nothing to restore
+     */
+    private boolean restoreSnapshot() {
+        long start = System.nanoTime();
+        List<OverlaySnapshot.Entry> entries = snapshot.read();
+        if (entries == null || entries.isEmpty()) return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !Settings.canDrawOverlays(this)) {
+            Log.w(TAG, "overlay permission revoked, dropping the snapshot");
+            snapshot.clear();
+            return false;
         }
-        params.gravity = WindowSetup.gravity;
 
-        try {
-            windowManager.addView(flutterView, params);
-            moveOverlay(dx, dy, null);
-          } catch (Throwable t) {
-            Log.e(TAG, "addView failed", t);
-            // Optionally stopSelf() or back off to a smaller size
-          }
+        isRunning = true;
+        mResources = getApplicationContext().getResources();
+        if (windowManager == null) windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        updateForegroundNotification(
+            WindowSetup.overlayTitle,
+            WindowSetup.overlayContent,
+            WindowSetup.notificationVisibility
+        );
+        for (OverlaySnapshot.Entry e : entries) {
+            WindowSetup setup = WindowSetup.of(e.id);
+            setup.width = e.width;
+            setup.height = e.height;
+            setup.gravity = e.gravity;
+            setup.positionGravity = e.positionGravity;
+            setup.enableDrag = e.enableDrag;
+            setup.fitContent = e.fitContent;
+            setup.opaque = e.opaque;
+            setup.setRenderMode(e.renderMode);
+            setup.setMessengerCodec(e.messengerCodec);
+
+            OverlayHost host = hosts.get(e.id);
+            if (host == null) {
+                host = new OverlayHost(this, windowManager, e.id);
+                hosts.put(e.id, host);
+            }
+            host.restore(e.xPx, e.yPx, e.hidden);
+        }
+        long us = (System.nanoTime() - start) / 1000;
+        OverlayMetrics.snapshotRestoreUs.record(us);
+        Log.d(TAG, "restored " + entries.size() + " overlay(s) from the snapshot in " + us + " us");
+        return true;
+    }
 
-        return START_STICKY;
+    /** Some state the snapshot covers changed. */
+    void stateChanged() {
+        if (snapshot != null) snapshot.changed();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR1)
-    private int screenHeight() {
-        Display display = windowManager.getDefaultDisplay();
-        DisplayMetrics dm = new DisplayMetrics();
-        display.getRealMetrics(dm);
-        return inPortrait()
-                ? dm.heightPixels + statusBarHeightPx() + navigationBarHeightPx()
-                : dm.heightPixels + statusBarHeightPx();
-    }
-
-    private int statusBarHeightPx() {
-        if (mStatusBarHeight == -1) {
-            int id = mResources.getIdentifier("status_bar_height", "dimen", "android");
-            mStatusBarHeight = (id > 0) ? mResources.getDimensionPixelSize(id) : dpToPx(DEFAULT_STATUS_BAR_HEIGHT_DP);
+    private List<OverlaySnapshot.Entry> snapshotEntries() {
+        List<OverlaySnapshot.Entry> entries = new ArrayList<>(hosts.size());
+        for (OverlayHost host : hosts.values()) {
+            OverlaySnapshot.Entry e = host.snapshot();
+            if (e != null) entries.add(e);
         }
-        return mStatusBarHeight;
+        return entries;
+    }
+
+    private void closeHost(String overlayId) {
+        OverlayHost host = hosts.remove(overlayId);
+        if (host == null) return;
+        host.close();
+        // The default engine stays cached and its Dart side keeps listening on the same
+        // relay; it only announces that once, so the relay must outlive the window.
+        if (!WindowSetup.DEFAULT_ID.equals(overlayId)) MessageRelay.remove(overlayId);
+        SharedBuffers.releaseOwner(overlayId);
+        OverlayEngines.release(overlayId);
+        if (!WindowSetup.DEFAULT_ID.equals(overlayId)) WindowSetup.remove(overlayId);
+        stateChanged();
     }
 
-    private int navigationBarHeightPx() {
-        if (mNavigationBarHeight == -1) {
-            int id = mResources.getIdentifier("navigation_bar_height", "dimen", "android");
-            mNavigationBarHeight = (id > 0) ? mResources.getDimensionPixelSize(id) : dpToPx(DEFAULT_NAV_BAR_HEIGHT_DP);
+    /** Current display snapshot, captured on first use. */
+    DisplayGeometry geometry() {
+        if (geometry == null) {
+            if (mResources == null) mResources = getApplicationContext().getResources();
+            if (windowManager == null) windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+            geometry = DisplayGeometry.capture(mResources, windowManager);
         }
-        return mNavigationBarHeight;
+        return geometry;
     }
 
-    private void updateOverlayFlag(MethodChannel.Result result, String flag) {
-        if (windowManager != null && flutterView != null) {
-            WindowSetup.setFlag(flag);
-            WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
-            p.flags = TOUCHABLE_FLAGS;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) p.alpha = MAXIMUM_OPACITY_ALLOWED_FOR_S_AND_HIGHER;
-            windowManager.updateViewLayout(flutterView, p);
-            result.success(true);
-        } else {
-            result.success(false);
+    int screenHeight() {
+        return geometry().screenHeight();
+    }
+
+    int statusBarHeightPx() {
+        return geometry().statusBarPx;
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        refreshGeometry();
+    }
+
+    /**
+     * Recaptures the display snapshot and, if it changed (rotation, resolution or density),
+     * lets every live overlay re-clamp and re-snap in place.
+     */
+    private void refreshGeometry() {
+        if (geometry == null) return;
+        DisplayGeometry old = geometry;
+        geometry = null;
+        DisplayGeometry now = geometry();
+        if (now.sameAs(old)) {
+            geometry = old;
+            return;
         }
+        Log.d(TAG, "display changed: " + old + " -> " + now);
+        for (OverlayHost host : hosts.values()) host.onGeometryChanged(old, now);
     }
 
-    private void resizeOverlay(int width, int height, boolean enableDrag, MethodChannel.Result result) {
-        if (windowManager != null && flutterView != null) {
-            WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
-            p.width  = (width == -1999 || width == -1) ? -1 : dpToPx(width);
-            p.height = (height == -1999 || height == -1) ? height : dpToPx(height); // corrected
-            WindowSetup.enableDrag = enableDrag;
-            windowManager.updateViewLayout(flutterView, p);
-            result.success(true);
-        } else {
+    boolean isScreenInteractive() {
+        return screenInteractive;
+    }
+
+    private void setScreenInteractive(boolean interactive) {
+        if (interactive == screenInteractive) return;
+        screenInteractive = interactive;
+        Log.d(TAG, interactive ? "screen usable, resuming overlays" : "screen off or locked, pausing overlays");
+        for (OverlayHost host : hosts.values()) host.updateRendering(false);
+    }
+
+    /** Whether the screen is on and unlocked, i.e. overlays can be seen. */
+    @SuppressWarnings("deprecation")
+    private boolean queryScreenInteractive() {
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        boolean on = pm == null || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH
+                ? pm.isInteractive()
+                : pm.isScreenOn());
+        return on && !isKeyguardLocked();
+    }
+
+    private boolean isKeyguardLocked() {
+        KeyguardManager km = (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
+        return km != null && km.isKeyguardLocked();
+    }
+
+    @Nullable
+    private static OverlayHost host(String overlayId) {
+        if (instance == null) return null;
+        return instance.hosts.get(overlayId == null ? WindowSetup.DEFAULT_ID : overlayId);
+    }
+
+    @VisibleForTesting
+    static int hostCount() {
+        return instance == null ? 0 : instance.hosts.size();
+    }
+
+    static boolean isActive(String overlayId) {
+        OverlayHost host = host(overlayId);
+        return host != null && host.isAttached();
+    }
+
+    public static Map<String, Double> getCurrentPosition(String overlayId) {
+        OverlayHost host = host(overlayId);
+        return host != null ? host.position() : null;
+    }
+
+    /** See {@link OverlayHost#writePosition}; false if the overlay isn't shown. */
+    static boolean writePosition(String overlayId, ByteBuffer out) {
+        OverlayHost host = host(overlayId);
+        return host != null && host.writePosition(out);
+    }
+
+    public static boolean moveOverlay(String overlayId, int x, int y) {
+        OverlayHost host = host(overlayId);
+        return host != null && host.move(x, y);
+    }
+
+    static boolean resizeOverlay(String overlayId, int width, int height, boolean enableDrag) {
+        OverlayHost host = host(overlayId);
+        return host != null && host.resize(width, height, enableDrag);
+    }
+
+    /** See {@link OverlayHost#animate}; answers false right away if the overlay isn't shown. */
+    static void animateOverlay(String overlayId, Integer x, Integer y, Integer width, Integer height,
+                               long durationMs, double[] curve, MethodChannel.Result result) {
+        OverlayHost host = host(overlayId);
+        if (host == null) {
             result.success(false);
+            return;
         }
-    }                     
-
-    private void moveOverlay(int x, int y, MethodChannel.Result result) {
-        if (windowManager != null && flutterView != null) {
-            WindowManager.LayoutParams p = (WindowManager.LayoutParams) flutterView.getLayoutParams();
-            p.x = (x == -1999 || x == -1) ? -1 : dpToPx(x);
-            p.y = dpToPx(y);
-            windowManager.updateViewLayout(flutterView, p);
-            if (result != null) result.success(true);
-        } else {
-            if (result != null) result.success(false);
-        }
+        host.animate(x, y, width, height, durationMs, curve, result);
     }
 
-    public static Map<String, Double> getCurrentPosition() {
-        if (instance != null && instance.flutterView != null) {
-            WindowManager.LayoutParams p = (WindowManager.LayoutParams) instance.flutterView.getLayoutParams();
-            Map<String, Double> pos = new HashMap<>();
-            pos.put("x", instance.pxToDp(p.x));
-            pos.put("y", instance.pxToDp(p.y));
-            return pos;
-        }
-        return null;
+    static boolean setHidden(String overlayId, boolean hidden) {
+        OverlayHost host = host(overlayId);
+        return host != null && host.setHidden(hidden);
+    }
+
+    @Nullable
+    static Map<String, Object> applyTransaction(String overlayId, MethodCall call) {
+        OverlayHost host = host(overlayId);
+        return host != null ? host.applyTransaction(call) : null;
+    }
+
+    /** Per-overlay show counters, keyed by overlay id. */
+    static Map<String, Object> hostMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        if (instance == null) return metrics;
+        for (OverlayHost host : instance.hosts.values()) metrics.put(host.id, host.metrics());
+        return metrics;
     }
 
-    public static boolean moveOverlay(int x, int y) {
-        if (instance != null && instance.flutterView != null && instance.windowManager != null) {
-            WindowManager.LayoutParams p = (WindowManager.LayoutParams) instance.flutterView.getLayoutParams();
-            p.x = (x == -1999 || x == -1) ? -1 : instance.dpToPx(x);
-            p.y = instance.dpToPx(y);
-            instance.windowManager.updateViewLayout(instance.flutterView, p);
-            return true;
+    static boolean setRenderMode(String overlayId, String mode, boolean opaque) {
+        OverlayHost host = host(overlayId);
+        if (host == null) {
+            WindowSetup setup = WindowSetup.of(overlayId);
+            setup.setRenderMode(mode);
+            setup.opaque = opaque;
+            return false;
         }
-        return false;
-    }    
+        return host.setRenderMode(mode, opaque);
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
 
-        // Pre-warm engine (unchanged) …
-        FlutterEngine engine = FlutterEngineCache.getInstance().get(OverlayConstants.CACHED_TAG);
-        if (engine == null) {
-            FlutterEngineGroup group = new FlutterEngineGroup(this);
-            DartExecutor.DartEntrypoint entryPoint = new DartExecutor.DartEntrypoint(
-                    FlutterInjector.instance().flutterLoader().findAppBundlePath(),
-                    "overlayMain"
-            );
-            engine = group.createAndRunEngine(this, entryPoint);
-            FlutterEngineCache.getInstance().put(OverlayConstants.CACHED_TAG, engine);
-        }
+        snapshot = new OverlaySnapshot(this, this::snapshotEntries);
+
+        // No engine here: each overlay's host obtains its own on show, and prewarming is
+        // up to the policy in OverlayEngines.
 
         // ✅ Create channel first, then show/update the ongoing notification (once)
         createNotificationChannel();
@@ -435,11 +540,51 @@ public class OverlayService extends Service implements View.OnTouchListener {
             WindowSetup.notificationVisibility
         );
 
+        // Display changes that don't come with a configuration change, e.g. a resolution switch
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            displayListener = new DisplayManager.DisplayListener() {
+                @Override
+                public void onDisplayAdded(int displayId) {}
+
+                @Override
+                public void onDisplayRemoved(int displayId) {}
+
+                @Override
+                public void onDisplayChanged(int displayId) {
+                    if (displayId == Display.DEFAULT_DISPLAY) refreshGeometry();
+                }
+            };
+            DisplayManager dm = (DisplayManager) getSystemService(Context.DISPLAY_SERVICE);
+            if (dm != null) dm.registerDisplayListener(displayListener, null);
+        }
+
+        // Overlays aren't drawn over the keyguard, so a locked screen counts as off until unlocked
+        screenInteractive = queryScreenInteractive();
+        screenReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String action = intent.getAction();
+                if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                    setScreenInteractive(false);
+                } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                    setScreenInteractive(!isKeyguardLocked());
+                } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                    setScreenInteractive(true);
+                }
+            }
+        };
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_USER_PRESENT);
+        registerReceiver(screenReceiver, screenFilter);
+
         instance = this;
     }
 
 
     private void createNotificationChannel() {
+        if (notificationChannelCreated) return;
+        notificationChannelCreated = true;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel ch = new NotificationChannel(
                     OverlayConstants.CHANNEL_ID,
@@ -456,118 +601,11 @@ public class OverlayService extends Service implements View.OnTouchListener {
                 .getIdentifier(String.format("ic_%s", name), resType, getApplicationContext().getPackageName());
     }
 
-    private int dpToPx(int dp) {
-        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_DIP, (float) dp, mResources.getDisplayMetrics());
-    }
-
-    private double pxToDp(int px) {
-        return (double) px / mResources.getDisplayMetrics().density;
+    int dpToPx(int dp) {
+        return geometry().dpToPx(dp);
     }
 
-    private boolean inPortrait() {
-        return mResources.getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
-    }
-
-    /** Drag + tap detection; tap opens/relaunches app */
-    @Override
-    public boolean onTouch(View view, MotionEvent event) {
-        if (windowManager == null) return false;
-
-        WindowManager.LayoutParams params = (WindowManager.LayoutParams) flutterView.getLayoutParams();
-
-        switch (event.getActionMasked()) {
-            case MotionEvent.ACTION_DOWN:
-                dragging = false;
-                downTime = android.os.SystemClock.elapsedRealtime();
-                lastX = downX = event.getRawX();
-                lastY = downY = event.getRawY();
-                return true;
-
-            case MotionEvent.ACTION_MOVE: {
-                float dx = event.getRawX() - lastX;
-                float dy = event.getRawY() - lastY;
-                if (!dragging && dx * dx + dy * dy < 25) return false;
-
-                lastX = event.getRawX();
-                lastY = event.getRawY();
-
-                boolean invertX = (WindowSetup.gravity == (Gravity.TOP | Gravity.RIGHT))
-                        || (WindowSetup.gravity == (Gravity.CENTER | Gravity.RIGHT))
-                        || (WindowSetup.gravity == (Gravity.BOTTOM | Gravity.RIGHT));
-                boolean invertY = (WindowSetup.gravity == (Gravity.BOTTOM | Gravity.LEFT))
-                        || (WindowSetup.gravity == Gravity.BOTTOM)
-                        || (WindowSetup.gravity == (Gravity.BOTTOM | Gravity.RIGHT));
-
-                int xx = params.x + ((int) dx * (invertX ? -1 : 1));
-                int yy = params.y + ((int) dy * (invertY ? -1 : 1));
-                params.x = xx;
-                params.y = yy;
-
-                windowManager.updateViewLayout(flutterView, params);
-                dragging = true;
-                return true;
-            }
-
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_CANCEL: {
-                float totalDx = Math.abs(event.getRawX() - downX);
-                float totalDy = Math.abs(event.getRawY() - downY);
-                long dt = android.os.SystemClock.elapsedRealtime() - downTime;
-
-                if (!dragging && totalDx < CLICK_TOLERANCE_PX && totalDy < CLICK_TOLERANCE_PX && dt < 250) {
-                    openOrBringMainApp();
-                    return true;
-                }
-
-                lastYPosition = params.y;
-                if (!"none".equals(WindowSetup.positionGravity)) {
-                    windowManager.updateViewLayout(flutterView, params);
-                    mTrayTimerTask = new TrayAnimationTimerTask();
-                    mTrayAnimationTimer = new Timer();
-                    mTrayAnimationTimer.schedule(mTrayTimerTask, 0, 25);
-                }
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private class TrayAnimationTimerTask extends TimerTask {
-        int mDestX;
-        int mDestY;
-        WindowManager.LayoutParams params = (WindowManager.LayoutParams) flutterView.getLayoutParams();
-
-        public TrayAnimationTimerTask() {
-            super();
-            mDestY = lastYPosition;
-            switch (WindowSetup.positionGravity) {
-                case "auto":
-                    mDestX = (params.x + (flutterView.getWidth() / 2)) <= szWindow.x / 2 ? 0 : szWindow.x - flutterView.getWidth();
-                    return;
-                case "left":
-                    mDestX = 0;
-                    return;
-                case "right":
-                    mDestX = szWindow.x - flutterView.getWidth();
-                    return;
-                default:
-                    mDestX = params.x;
-                    mDestY = params.y;
-                    break;
-            }
-        }
-
-        @Override
-        public void run() {
-            mAnimationHandler.post(() -> {
-                params.x = (2 * (params.x - mDestX)) / 3 + mDestX;
-                params.y = (2 * (params.y - mDestY)) / 3 + mDestY;
-                if (windowManager != null) windowManager.updateViewLayout(flutterView, params);
-                if (Math.abs(params.x - mDestX) < 2 && Math.abs(params.y - mDestY) < 2) {
-                    try { cancel(); } catch (Throwable ignored) {}
-                    if (mTrayAnimationTimer != null) mTrayAnimationTimer.cancel();
-                }
-            });
-        }
+    double pxToDp(int px) {
+        return geometry().pxToDp(px);
     }
-}
\ No newline at end of file
+}
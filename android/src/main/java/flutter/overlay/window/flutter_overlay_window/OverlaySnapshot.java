@@ -0,0 +1,202 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.core.util.AtomicFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Last overlay configuration and window positions, kept in a small binary file so that a
+ * sticky restart of {@link OverlayService} after the process was killed can rebuild the
+ * overlays exactly as they were.
+ *
+ * Changes only mark the snapshot dirty; it is encoded at most once per
+ * {@link #WRITE_DELAY_MS} on the main thread and written on a background thread, and only
+ * if the bytes differ from the last write. Must only be used from the main thread.
+ */
+final class OverlaySnapshot {
+
+    private static final String TAG = "OverlaySnapshot";
+    private static final String FILE_NAME = "flutter_overlay_window.snapshot";
+    private static final int VERSION = 1;
+    static final long WRITE_DELAY_MS = 500;
+
+    /** One overlay as it was last seen. */
+    static final class Entry {
+        String id;
+        int width, height, gravity;
+        @Nullable String positionGravity;
+        boolean enableDrag, fitContent, opaque, hidden;
+        String renderMode, messengerCodec;
+        int xPx, yPx;
+    }
+
+    interface Source {
+        /** Entries of the live overlays, in the order they were shown. */
+        @NonNull
+        List<Entry> entries();
+    }
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OverlaySnapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicFile file;
+    private final Source source;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable write = this::write;
+    private boolean scheduled = false;
+    @Nullable private byte[] written;
+
+    OverlaySnapshot(@NonNull Context context, @NonNull Source source) {
+        this.file = new AtomicFile(new File(ContextCompat.getNoBackupFilesDir(context), FILE_NAME));
+        this.source = source;
+    }
+
+    /** Something the snapshot covers changed; it is saved shortly. Cheap enough for per-frame calls. */
+    void changed() {
+        if (scheduled) return;
+        scheduled = true;
+        handler.postDelayed(write, WRITE_DELAY_MS);
+    }
+
+    /** Drops a pending write and deletes the file, so nothing comes back after an intended close. */
+    void clear() {
+        handler.removeCallbacks(write);
+        scheduled = false;
+        written = null;
+        writer.execute(file::delete);
+    }
+
+    private void write() {
+        scheduled = false;
+        List<Entry> entries = source.entries();
+        if (entries.isEmpty()) {
+            clear();
+            return;
+        }
+        final byte[] bytes;
+        try {
+            bytes = encode(entries);
+        } catch (IOException e) {
+            Log.w(TAG, "encoding the snapshot failed", e);
+            return;
+        }
+        if (Arrays.equals(bytes, written)) return;
+        written = bytes;
+        writer.execute(() -> {
+            FileOutputStream out = null;
+            try {
+                out = file.startWrite();
+                out.write(bytes);
+                file.finishWrite(out);
+            } catch (IOException e) {
+                if (out != null) file.failWrite(out);
+                Log.w(TAG, "writing the snapshot failed", e);
+            }
+        });
+    }
+
+    /** Reads the saved overlays, or null if there are none or the file is unreadable. */
+    @Nullable
+    List<Entry> read() {
+        try {
+            byte[] bytes = file.readFully();
+            written = bytes;
+            return decode(bytes);
+        } catch (IOException e) {
+            if (file.getBaseFile().exists()) Log.w(TAG, "discarding an unreadable snapshot", e);
+            return null;
+        }
+    }
+
+    private static byte[] encode(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeString(out, WindowSetup.overlayTitle);
+        writeString(out, WindowSetup.overlayContent);
+        out.writeInt(WindowSetup.notificationVisibility);
+        out.writeLong(WindowSetup.notificationMinIntervalMs);
+        out.writeShort(entries.size());
+        for (Entry e : entries) {
+            out.writeUTF(e.id);
+            out.writeInt(e.width);
+            out.writeInt(e.height);
+            out.writeInt(e.gravity);
+            writeString(out, e.positionGravity);
+            out.writeByte((e.enableDrag ? 1 : 0) | (e.fitContent ? 2 : 0) | (e.opaque ? 4 : 0) | (e.hidden ? 8 : 0));
+            out.writeUTF(e.renderMode);
+            out.writeUTF(e.messengerCodec);
+            out.writeInt(e.xPx);
+            out.writeInt(e.yPx);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Decodes a snapshot and applies its notification fields to {@link WindowSetup}. */
+    private static List<Entry> decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readByte() != VERSION) throw new IOException("unknown snapshot version");
+        String title = readString(in);
+        String content = readString(in);
+        int visibility = in.readInt();
+        long minIntervalMs = in.readLong();
+        int count = in.readShort();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Entry e = new Entry();
+            e.id = in.readUTF();
+            e.width = in.readInt();
+            e.height = in.readInt();
+            e.gravity = in.readInt();
+            e.positionGravity = readString(in);
+            int flags = in.readByte();
+            e.enableDrag = (flags & 1) != 0;
+            e.fitContent = (flags & 2) != 0;
+            e.opaque = (flags & 4) != 0;
+            e.hidden = (flags & 8) != 0;
+            e.renderMode = in.readUTF();
+            e.messengerCodec = in.readUTF();
+            e.xPx = in.readInt();
+            e.yPx = in.readInt();
+            entries.add(e);
+        }
+        WindowSetup.overlayTitle = title;
+        WindowSetup.overlayContent = content;
+        WindowSetup.notificationVisibility = visibility;
+        WindowSetup.notificationMinIntervalMs = minIntervalMs;
+        return entries;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
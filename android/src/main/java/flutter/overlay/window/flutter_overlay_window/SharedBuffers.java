@@ -0,0 +1,220 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Process-wide registry of direct buffers published under a handle, so bulky data (tiles,
+ * images, polylines) can go from one engine to another without being encoded into a
+ * shareData message. Both engines live in this process: a read replies with the stored
+ * buffer itself, which the engine copies once into the reader's isolate.
+ *
+ * A published buffer starts with one reference, held by its publisher. {@link #retain}
+ * adds one and {@link #release} drops one; the buffer is freed once none are left. When
+ * an overlay closes, the reference it still holds on what it published is dropped for it.
+ * Buffers can't be changed once published, so publish a new handle for new content.
+ * Must only be used from the platform thread.
+ *
+ * Requests on {@link OverlayConstants#BUFFERS_TAG}: {@code [u8 opcode][u16 handleLen][utf-8 handle]}
+ * followed, for {@link #OP_PUBLISH}, by the bytes to publish. A read is answered with the
+ * bytes, or null if there is no such handle; everything else with
+ * {@code [u8 status]} as in {@link OverlayControl}. Byte order is {@link OverlayConstants#WIRE_ORDER}.
+ */
+final class SharedBuffers {
+    private SharedBuffers() {}
+
+    private static final String TAG = "SharedBuffers";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int OP_PUBLISH = 1;
+    static final int OP_READ = 2;
+    static final int OP_RETAIN = 3;
+    static final int OP_RELEASE = 4;
+
+    /** Total size the registry holds at most; publishing beyond it fails. */
+    static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final class Entry {
+        /** Direct, positioned at its end as the reply path expects. */
+        final ByteBuffer buffer;
+        /** The overlay that published it, or null for the main app. */
+        @Nullable String owner;
+        boolean ownerHeld = true;
+        int refs = 1;
+
+        Entry(ByteBuffer buffer, @Nullable String owner) {
+            this.buffer = buffer;
+            this.owner = owner;
+        }
+    }
+
+    private static final Map<String, Entry> entries = new HashMap<>();
+    private static long bytes = 0;
+    private static long published = 0;
+    private static long reads = 0;
+
+    /**
+     * Publishes a direct buffer from native code, without copying it. Its remaining bytes
+     * are shared and must not be changed afterwards.
+     *
+     * @return false if the handle is taken or the registry is full
+     */
+    static boolean publish(@NonNull String handle, @NonNull ByteBuffer buffer) {
+        if (!buffer.isDirect()) throw new IllegalArgumentException("buffer must be direct");
+        ByteBuffer shared = buffer.slice();
+        shared.position(shared.limit());
+        return put(handle, shared, null);
+    }
+
+    /** A read-only view of a published buffer, or null if there is none. */
+    @Nullable
+    static ByteBuffer get(@NonNull String handle) {
+        Entry entry = entries.get(handle);
+        if (entry == null) return null;
+        ByteBuffer view = entry.buffer.asReadOnlyBuffer();
+        view.flip();
+        return view;
+    }
+
+    static boolean retain(@NonNull String handle) {
+        Entry entry = entries.get(handle);
+        if (entry == null) return false;
+        entry.refs++;
+        return true;
+    }
+
+    static boolean release(@NonNull String handle) {
+        Entry entry = entries.get(handle);
+        if (entry == null) return false;
+        unref(handle, entry);
+        return true;
+    }
+
+    /** Drops the references a closed overlay still held as publisher. */
+    static void releaseOwner(@NonNull String overlayId) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (!entry.ownerHeld || !overlayId.equals(entry.owner)) continue;
+            entry.ownerHeld = false;
+            if (--entry.refs == 0) {
+                it.remove();
+                bytes -= entry.buffer.position();
+            }
+        }
+    }
+
+    /** Hands what {@code from} published to {@code to}, when the standby becomes an overlay. */
+    static void transferOwner(@NonNull String from, @NonNull String to) {
+        for (Entry entry : entries.values()) {
+            if (from.equals(entry.owner)) entry.owner = to;
+        }
+    }
+
+    private static boolean put(String handle, ByteBuffer buffer, @Nullable String owner) {
+        if (entries.containsKey(handle)) {
+            Log.w(TAG, "buffer " + handle + " is already published");
+            return false;
+        }
+        if (bytes + buffer.position() > MAX_BYTES) {
+            Log.w(TAG, "no room for buffer " + handle + " (" + buffer.position() + " bytes)");
+            return false;
+        }
+        entries.put(handle, new Entry(buffer, owner));
+        bytes += buffer.position();
+        published++;
+        return true;
+    }
+
+    private static void unref(String handle, Entry entry) {
+        if (--entry.refs > 0) return;
+        entries.remove(handle);
+        bytes -= entry.buffer.position();
+    }
+
+    /**
+     * @param callerOverlayId the overlay the calling engine renders ({@link OverlayEngines#STANDBY_ID}
+     *                        for the standby), or null for the main app
+     */
+    static void handle(@Nullable ByteBuffer message, @Nullable String callerOverlayId,
+                       @NonNull BinaryMessenger.BinaryReply reply) {
+        if (message == null) {
+            reply.reply(OverlayControl.status(OverlayControl.STATUS_BAD_REQUEST));
+            return;
+        }
+        message.order(OverlayConstants.WIRE_ORDER);
+        final int op;
+        final String handle;
+        try {
+            op = message.get() & 0xff;
+            byte[] handleBytes = new byte[message.getShort() & 0xffff];
+            message.get(handleBytes);
+            handle = new String(handleBytes, UTF_8);
+        } catch (BufferUnderflowException e) {
+            reply.reply(OverlayControl.status(OverlayControl.STATUS_BAD_REQUEST));
+            return;
+        }
+
+        switch (op) {
+            case OP_PUBLISH: {
+                // The message is only valid during this call; this is the one copy made.
+                ByteBuffer copy = MessageRelay.copyOf(message);
+                boolean ok = put(handle, copy, callerOverlayId);
+                reply.reply(OverlayControl.status(ok ? OverlayControl.STATUS_OK : OverlayControl.STATUS_FAILED));
+                break;
+            }
+            case OP_READ: {
+                Entry entry = entries.get(handle);
+                if (entry != null) reads++;
+                reply.reply(entry != null ? entry.buffer.duplicate() : null);
+                break;
+            }
+            case OP_RETAIN:
+                reply.reply(OverlayControl.status(retain(handle) ? OverlayControl.STATUS_OK : OverlayControl.STATUS_FAILED));
+                break;
+            case OP_RELEASE: {
+                Entry entry = entries.get(handle);
+                if (entry != null) {
+                    // The publisher giving up its own reference; closing it won't drop another.
+                    if (entry.ownerHeld && equal(entry.owner, callerOverlayId)) entry.ownerHeld = false;
+                    unref(handle, entry);
+                }
+                reply.reply(OverlayControl.status(entry != null ? OverlayControl.STATUS_OK : OverlayControl.STATUS_FAILED));
+                break;
+            }
+            default:
+                Log.w(TAG, "unknown buffer opcode " + op);
+                reply.reply(OverlayControl.status(OverlayControl.STATUS_BAD_REQUEST));
+        }
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Registry counts for the overlay metrics. */
+    static Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("count", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("published", published);
+        stats.put("reads", reads);
+        return stats;
+    }
+
+    static void resetCounts() {
+        published = 0;
+        reads = 0;
+    }
+}
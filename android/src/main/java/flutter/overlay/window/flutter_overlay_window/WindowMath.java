@@ -0,0 +1,78 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+/**
+ * Per-frame window arithmetic of the overlays: drag direction, dp/px conversion and
+ * snap/clamp targets.
+ *
+ * Deliberately free of Android types so the benchmark module can run it on a plain JVM;
+ * the gravity constants below have the values of {@code android.view.Gravity}.
+ */
+final class WindowMath {
+    private WindowMath() {}
+
+    static final int GRAVITY_CENTER_HORIZONTAL = 0x01;
+    static final int GRAVITY_LEFT = 0x03;
+    static final int GRAVITY_RIGHT = 0x05;
+    static final int GRAVITY_HORIZONTAL_MASK = 0x07;
+    static final int GRAVITY_CENTER_VERTICAL = 0x10;
+    static final int GRAVITY_TOP = 0x30;
+    static final int GRAVITY_BOTTOM = 0x50;
+    static final int GRAVITY_VERTICAL_MASK = 0x70;
+
+    /** -1 if a window with this gravity moves left when its x grows, else 1. */
+    static int dragSignX(int gravity) {
+        return (gravity & GRAVITY_HORIZONTAL_MASK) == GRAVITY_RIGHT ? -1 : 1;
+    }
+
+    /** -1 if a window with this gravity moves up when its y grows, else 1. */
+    static int dragSignY(int gravity) {
+        return (gravity & GRAVITY_VERTICAL_MASK) == GRAVITY_BOTTOM ? -1 : 1;
+    }
+
+    static int dpToPx(int dp, float density) {
+        return (int) (dp * density);
+    }
+
+    static double pxToDp(int px, float density) {
+        return (double) px / density;
+    }
+
+    /** Edge a window snaps to for {@code positionGravity}, or {@code x} itself if it doesn't snap. */
+    static int snapTargetX(String positionGravity, int x, int width, int screenWidth) {
+        if (positionGravity == null) return x;
+        switch (positionGravity) {
+            case "auto":
+                return (x + (width / 2)) <= screenWidth / 2 ? 0 : screenWidth - width;
+            case "left":
+                return 0;
+            case "right":
+                return screenWidth - width;
+            default:
+                return x;
+        }
+    }
+
+    /**
+     * Maps an offset within {@code [0, oldRange]} to the same fraction of {@code newRange}
+     * and clamps it to {@code [minEdge, newRange]}; centered offsets range over
+     * {@code +-range/2} instead.
+     */
+    static int rescale(int offset, int oldRange, int newRange, boolean centered, int minEdge) {
+        if (newRange <= 0) return 0;
+        int scaled = oldRange > 0 ? (int) ((long) offset * newRange / oldRange) : offset;
+        int min = centered ? -newRange / 2 : minEdge;
+        int max = centered ? newRange / 2 : newRange;
+        return Math.max(min, Math.min(max, scaled));
+    }
+
+    /**
+     * How far a window offset moves, along one axis, to keep content at {@code start} of
+     * size {@code size} in place when the window shrinks to it. {@code gravity} is the
+     * axis part of the window gravity.
+     */
+    static int contentShift(int gravity, int center, int far, int start, int size, int windowSize) {
+        if (gravity == center) return start + size / 2 - windowSize / 2;
+        if (gravity == far) return windowSize - start - size;
+        return start;
+    }
+}
@@ -1,28 +1,132 @@
 package flutter.overlay.window.flutter_overlay_window;
 
+import android.os.Build;
 import android.view.Gravity;
 
+import androidx.annotation.VisibleForTesting;
+import androidx.core.app.NotificationCompat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Configuration of one overlay window, keyed by overlay id. */
 final class WindowSetup {
-    private WindowSetup() {}
+
+    static final String DEFAULT_ID = "default";
+
+    private static final Map<String, WindowSetup> setups = new HashMap<>();
+
+    static synchronized WindowSetup of(String id) {
+        if (id == null) id = DEFAULT_ID;
+        WindowSetup setup = setups.get(id);
+        if (setup == null) {
+            setup = new WindowSetup(id);
+            setups.put(id, setup);
+        }
+        return setup;
+    }
+
+    static synchronized void remove(String id) {
+        setups.remove(id);
+    }
+
+    @VisibleForTesting
+    static synchronized int count() {
+        return setups.size();
+    }
+
+    @VisibleForTesting
+    static synchronized void resetForTesting() {
+        setups.clear();
+    }
+
+    final String id;
+
+    private WindowSetup(String id) {
+        this.id = id;
+    }
 
     // Size (-1999 means "use default")
-    static int width  = -1999; // match parent
-    static int height = -1999; // full screen (computed)
+    int width  = -1999; // match parent
+    int height = -1999; // full screen (computed)
 
     // Positioning / gravity
-    static int gravity = Gravity.TOP | Gravity.LEFT;
-    static String positionGravity = "auto"; // auto|left|right|none
+    int gravity = Gravity.TOP | Gravity.LEFT;
+    String positionGravity = "auto"; // auto|left|right|none
 
     // Dragging
-    static boolean enableDrag = true;
+    boolean enableDrag = true;
+
+    // Shrink the window to the content bounds reported by the overlay
+    boolean fitContent = false;
+
+    // Rendering (auto|surface|texture); opaque means the content covers the whole window
+    String renderMode = OverlayConstants.RENDER_TEXTURE;
+    boolean opaque = false;
+
+    // Messenger codec negotiated at showOverlay time (json|standard|binary)
+    String messengerCodec = OverlayConstants.CODEC_JSON;
 
-    // Notification text
+    // Notification text (one notification for the whole service)
     static String overlayTitle   = "Overlay running";
     static String overlayContent = "Tap the bubble to open Johar Ride";
     static int notificationVisibility = android.app.Notification.VISIBILITY_PUBLIC;
+    // Minimum time between two posts of the notification; faster updates are coalesced
+    static long notificationMinIntervalMs = 0;
+
+    void setGravityFromAlignment(String alignment) {
+        switch (alignment) {
+            case "topLeft":      gravity = Gravity.TOP | Gravity.LEFT; break;
+            case "topCenter":    gravity = Gravity.TOP; break;
+            case "topRight":     gravity = Gravity.TOP | Gravity.RIGHT; break;
+            case "centerLeft":   gravity = Gravity.CENTER | Gravity.LEFT; break;
+            case "centerRight":  gravity = Gravity.CENTER | Gravity.RIGHT; break;
+            case "bottomLeft":   gravity = Gravity.BOTTOM | Gravity.LEFT; break;
+            case "bottomCenter": gravity = Gravity.BOTTOM; break;
+            case "bottomRight":  gravity = Gravity.BOTTOM | Gravity.RIGHT; break;
+            default:             gravity = Gravity.CENTER; break;
+        }
+    }
+
+    void setRenderMode(String mode) {
+        if (OverlayConstants.RENDER_AUTO.equals(mode) || OverlayConstants.RENDER_SURFACE.equals(mode)) {
+            renderMode = mode;
+        } else {
+            renderMode = OverlayConstants.RENDER_TEXTURE;
+        }
+    }
+
+    /**
+     * Resolves {@code auto} to a concrete surface. A SurfaceView skips the extra texture
+     * copy but sits in its own layer, so it only wins when nothing needs to blend: the
+     * content is opaque and the window isn't dimmed (Android 12+ caps overlay alpha).
+     */
+    String resolvedRenderMode() {
+        if (!OverlayConstants.RENDER_AUTO.equals(renderMode)) return renderMode;
+        boolean windowAlpha = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S;
+        return opaque && !windowAlpha ? OverlayConstants.RENDER_SURFACE : OverlayConstants.RENDER_TEXTURE;
+    }
+
+    void setMessengerCodec(String codec) {
+        if (OverlayConstants.CODEC_STANDARD.equals(codec) || OverlayConstants.CODEC_BINARY.equals(codec)) {
+            messengerCodec = codec;
+        } else {
+            messengerCodec = OverlayConstants.CODEC_JSON;
+        }
+    }
+
+    static void setNotificationVisibility(String name) {
+        if ("visibilitySecret".equals(name)) {
+            notificationVisibility = NotificationCompat.VISIBILITY_SECRET;
+        } else if ("visibilityPrivate".equals(name)) {
+            notificationVisibility = NotificationCompat.VISIBILITY_PRIVATE;
+        } else {
+            notificationVisibility = NotificationCompat.VISIBILITY_PUBLIC;
+        }
+    }
 
     // For API parity with older code paths
-    static void setFlag(String any) {
+    void setFlag(String any) {
         // no-op: we always use touchable flags in this build
     }
-}
\ No newline at end of file
+}
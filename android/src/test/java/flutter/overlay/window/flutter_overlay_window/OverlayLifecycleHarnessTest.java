@@ -0,0 +1,236 @@
+package flutter.overlay.window.flutter_overlay_window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowSettings;
+import org.robolectric.shadows.ShadowWindowManagerImpl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.embedding.engine.FlutterEngineCache;
+import io.flutter.embedding.engine.FlutterJNI;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Drives show/move/resize/close cycles through the plugin and {@link OverlayService}
+ * against Robolectric's window manager and stub engines, reports per-operation latency
+ * and layout update counts, and checks that nothing accumulates across cycles.
+ *
+ * Latencies are those of the plugin code on a JVM, not of a device; compare them across
+ * revisions, not against frame budgets. They go to the log under {@link #TAG}, which
+ * Robolectric keeps quiet unless {@code robolectric.logging=stdout} is set.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class OverlayLifecycleHarnessTest {
+
+    private static final String TAG = "OverlayLifecycleHarness";
+    private static final int CYCLES = 2000;
+    private static final String[] IDS = {"a", "b", "c"};
+
+    private Application app;
+    private FlutterOverlayWindowPlugin plugin;
+    private FlutterPlugin.FlutterPluginBinding binding;
+    private ServiceController<OverlayService> service;
+    private ShadowWindowManagerImpl windows;
+    private int startId = 0;
+
+    @Before
+    public void setUp() {
+        app = RuntimeEnvironment.getApplication();
+        ShadowSettings.setCanDrawOverlays(true);
+        FlutterEngineCache.getInstance().put(OverlayConstants.CACHED_TAG, stubEngine());
+
+        plugin = new FlutterOverlayWindowPlugin();
+        FlutterEngine mainEngine = stubEngine();
+        binding = mock(FlutterPlugin.FlutterPluginBinding.class);
+        when(binding.getApplicationContext()).thenReturn(app);
+        when(binding.getBinaryMessenger()).thenReturn(mainEngine.getDartExecutor());
+        when(binding.getFlutterEngine()).thenReturn(mainEngine);
+        plugin.onAttachedToEngine(binding);
+
+        service = Robolectric.buildService(OverlayService.class).create();
+        windows = Shadow.extract(service.get().getSystemService(Context.WINDOW_SERVICE));
+    }
+
+    @After
+    public void tearDown() {
+        service.destroy();
+        plugin.onDetachedFromEngine(binding);
+        FlutterEngineCache.getInstance().clear();
+        // Process-wide state would otherwise carry over into the next test.
+        OverlayEngines.resetForTesting();
+        WindowSetup.resetForTesting();
+        MessageRelay.resetForTesting();
+        OverlayCommands.resetForTesting();
+        OverlayMetrics.reset();
+    }
+
+    @Test
+    public void showCloseCyclesKeepObjectCountsFlat() {
+        long[] show = new long[CYCLES];
+        long[] move = new long[CYCLES];
+        long[] resize = new long[CYCLES];
+        long[] close = new long[CYCLES];
+
+        // Warm up the default overlay; it stays open for the whole run like a dock bubble.
+        long coldShow = timed(() -> call("showOverlay", showArgs(null)));
+        int baselineViews = windows.getViews().size();
+        int baselineEngines = OverlayEngines.engineCount();
+        int baselineSetups = WindowSetup.count();
+        int baselineRelays = MessageRelay.overlayRelayCount();
+        assertEquals(1, baselineViews);
+
+        long layoutUpdatesBefore = OverlayMetrics.layoutUpdateUs.count();
+        for (int i = 0; i < CYCLES; i++) {
+            String id = IDS[i % IDS.length];
+            // Closing a non-default overlay destroys its engine; hand the next show a new stub.
+            FlutterEngineCache.getInstance().put(OverlayEngines.engineTag(id), stubEngine());
+
+            show[i] = timed(() -> call("showOverlay", showArgs(id)));
+            assertTrue(OverlayService.isActive(id));
+
+            Map<String, Object> position = new HashMap<>();
+            position.put("overlayId", id);
+            position.put("x", i % 300);
+            position.put("y", 100);
+            move[i] = timed(() -> assertEquals(true, call("moveOverlay", position)));
+
+            Map<String, Object> size = new HashMap<>();
+            size.put("overlayId", id);
+            size.put("width", 200);
+            size.put("height", 120 + i % 50);
+            size.put("enableDrag", true);
+            resize[i] = timed(() -> assertEquals(true, call("resizeOverlay", size)));
+
+            Map<String, Object> target = new HashMap<>();
+            target.put("overlayId", id);
+            close[i] = timed(() -> call("closeOverlay", target));
+            assertFalse(OverlayService.isActive(id));
+        }
+        long layoutUpdates = OverlayMetrics.layoutUpdateUs.count() - layoutUpdatesBefore;
+
+        report("cold show (default)", new long[]{coldShow});
+        report("show", show);
+        report("move", move);
+        report("resize", resize);
+        report("close", close);
+        Log.i(TAG, "updateViewLayout calls: " + layoutUpdates + " over " + CYCLES + " cycles");
+
+        // One for the move, one for the resize; show and close add or remove the window.
+        assertEquals(2L * CYCLES, layoutUpdates);
+        assertEquals(baselineViews, windows.getViews().size());
+        assertEquals(baselineEngines, OverlayEngines.engineCount());
+        assertEquals(baselineSetups, WindowSetup.count());
+        assertEquals(baselineRelays, MessageRelay.overlayRelayCount());
+        assertEquals(1, OverlayService.hostCount());
+    }
+
+    @Test
+    public void reshowReusesTheAttachedView() {
+        long cold = timed(() -> call("showOverlay", showArgs(null)));
+        long[] warm = new long[CYCLES];
+        for (int i = 0; i < warm.length; i++) {
+            warm[i] = timed(() -> call("showOverlay", showArgs(null)));
+        }
+        report("cold show", new long[]{cold});
+        report("warm reshow", warm);
+
+        assertEquals(1, windows.getViews().size());
+        assertEquals(1, OverlayService.hostCount());
+        assertEquals(1, OverlayEngines.engineCount());
+    }
+
+    /** Calls the plugin and runs the service intents it started, as the system would. */
+    private Object call(String method, Map<String, Object> args) {
+        Object[] result = new Object[1];
+        plugin.onMethodCall(new MethodCall(method, args), new MethodChannel.Result() {
+            @Override
+            public void success(Object value) {
+                result[0] = value;
+            }
+
+            @Override
+            public void error(String code, String message, Object details) {
+                throw new AssertionError(method + " failed: " + code + " " + message);
+            }
+
+            @Override
+            public void notImplemented() {
+                throw new AssertionError(method + " not implemented");
+            }
+        });
+        Intent intent;
+        while ((intent = shadowOf(app).getNextStartedService()) != null) {
+            service.withIntent(intent).startCommand(0, ++startId);
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+        return result[0];
+    }
+
+    private static Map<String, Object> showArgs(String overlayId) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("height", 200);
+        args.put("width", 200);
+        args.put("alignment", "topLeft");
+        args.put("flag", "defaultFlag");
+        args.put("overlayTitle", "Trip");
+        args.put("overlayContent", "4 min away");
+        args.put("enableDrag", true);
+        args.put("notificationVisibility", "visibilityPublic");
+        args.put("positionGravity", "auto");
+        args.put("overlayId", overlayId);
+        return args;
+    }
+
+    private FlutterEngine stubEngine() {
+        FlutterJNI jni = mock(FlutterJNI.class);
+        when(jni.isAttached()).thenReturn(true);
+        FlutterLoader loader = mock(FlutterLoader.class);
+        when(loader.initialized()).thenReturn(true);
+        return new FlutterEngine(app, loader, jni, null, false);
+    }
+
+    private static long timed(Runnable op) {
+        long start = System.nanoTime();
+        op.run();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String op, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        Log.i(TAG, String.format("%-20s n=%-5d p50=%8.1fus p90=%8.1fus p99=%8.1fus max=%8.1fus", op, sorted.length,
+                sorted[sorted.length / 2] / 1000.0,
+                sorted[(int) (sorted.length * 0.9)] / 1000.0,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1000.0,
+                sorted[sorted.length - 1] / 1000.0));
+    }
+}
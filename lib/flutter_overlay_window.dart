@@ -3,3 +3,5 @@ library flutter_overlay_window;
 export 'package:flutter_overlay_window/src/overlay_window.dart';
 export 'package:flutter_overlay_window/src/overlay_config.dart';
 export 'package:flutter_overlay_window/src/models/overlay_position.dart';
+export 'package:flutter_overlay_window/src/overlay_content_bounds.dart';
+export 'package:flutter_overlay_window/src/models/overlay_geometry.dart';
@@ -0,0 +1,36 @@
+import 'package:flutter/foundation.dart';
+import 'package:flutter_overlay_window/src/models/overlay_position.dart';
+
+/// Window geometry of an overlay, in dp, as pushed by
+/// [FlutterOverlayWindow.overlayGeometry].
+@immutable
+class OverlayGeometry {
+  final String overlayId;
+  final OverlayPosition position;
+
+  /// Window size, or a [WindowSize] constant when it isn't a fixed size.
+  final double width;
+  final double height;
+
+  /// True while the window is being dragged or animated; the last event of a
+  /// move always has `moving == false`.
+  final bool moving;
+
+  const OverlayGeometry(
+      this.overlayId, this.position, this.width, this.height, this.moving);
+
+  factory OverlayGeometry.fromMap(Map<Object?, Object?> map) => OverlayGeometry(
+        map['overlayId'] as String? ?? 'default',
+        OverlayPosition(
+            map['x'] as double? ?? 0, map['y'] as double? ?? 0),
+        map['width'] as double? ?? 0,
+        map['height'] as double? ?? 0,
+        map['moving'] as bool? ?? false,
+      );
+
+  @override
+  String toString() {
+    return 'OverlayGeometry{overlayId=$overlayId, position=$position, '
+        'width=$width, height=$height, moving=$moving}';
+  }
+}
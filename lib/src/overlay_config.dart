@@ -67,6 +67,62 @@ enum NotificationVisibility {
   visibilityPrivate
 }
 
+/// Codec used by [FlutterOverlayWindow.shareData] between the main app and the overlay.
+enum OverlayMessageCodec {
+  /// Messages are encoded as JSON strings. Works with any JSON-compatible value.
+  json,
+
+  /// Messages use Flutter's binary [StandardMessageCodec]; supports the same
+  /// values as method channels (including typed lists) without JSON text.
+  standard,
+
+  /// Messages are sent as raw [ByteData] and never re-encoded.
+  binary,
+}
+
+/// What happens to [FlutterOverlayWindow.shareData] messages when the queue
+/// waiting for the other side to start listening is full.
+enum OverlayMessageOverflow {
+  /// Drop the oldest queued message.
+  dropOldest,
+
+  /// Drop the message being sent.
+  dropNewest,
+
+  /// A message sent with a `key` replaces the queued message with the same key;
+  /// otherwise the oldest queued message is dropped.
+  coalesceByKey,
+}
+
+/// Surface the overlay is rendered into.
+enum OverlayRenderMode {
+  /// Pick [surface] when the overlay is opaque and the window is not
+  /// translucent, otherwise [texture].
+  auto,
+
+  /// Render into a SurfaceView: no extra composition copy, cheapest for
+  /// opaque, rectangular overlays.
+  surface,
+
+  /// Render into a TextureView: blends with what is behind the overlay.
+  texture,
+}
+
+/// When the overlay engine is started by the main app.
+enum OverlayEnginePrewarm {
+  /// Start it as soon as the plugin attaches to the activity.
+  eager,
+
+  /// Start it on the first [FlutterOverlayWindow.showOverlay].
+  onShow,
+
+  /// Start it once the main thread has no pending work.
+  idle,
+
+  /// Start it after a fixed delay.
+  delayed,
+}
+
 class WindowSize {
   WindowSize._();
 
@@ -0,0 +1,50 @@
+import 'package:flutter/rendering.dart';
+import 'package:flutter/scheduler.dart';
+import 'package:flutter/widgets.dart';
+import 'package:flutter_overlay_window/src/overlay_window.dart';
+
+/// Reports the bounds of [child] to the overlay window so an overlay shown with
+/// `fitContent` shrinks to it.
+///
+/// The bounds are checked after every frame it was laid out or painted in, so
+/// a move by its parent is seen too, and sent only when they changed. Place it around the visible part of the overlay, e.g.
+/// `Align(alignment: Alignment.topLeft, child: OverlayContentBounds(child: bubble))`.
+class OverlayContentBounds extends SingleChildRenderObjectWidget {
+  const OverlayContentBounds({Key? key, required Widget child})
+      : super(key: key, child: child);
+
+  @override
+  RenderObject createRenderObject(BuildContext context) =>
+      _RenderOverlayContentBounds();
+}
+
+class _RenderOverlayContentBounds extends RenderProxyBox {
+  Rect? _reported;
+  bool _scheduled = false;
+
+  @override
+  void performLayout() {
+    super.performLayout();
+    _scheduleReport();
+  }
+
+  @override
+  void paint(PaintingContext context, Offset offset) {
+    super.paint(context, offset);
+    // A parent that moves it repaints it, but doesn't have to lay it out again.
+    _scheduleReport();
+  }
+
+  void _scheduleReport() {
+    if (_scheduled) return;
+    _scheduled = true;
+    SchedulerBinding.instance.addPostFrameCallback((_) {
+      _scheduled = false;
+      if (!attached || !hasSize) return;
+      final Rect bounds = localToGlobal(Offset.zero) & size;
+      if (bounds == _reported) return;
+      _reported = bounds;
+      FlutterOverlayWindow.updateContentBounds(bounds);
+    });
+  }
+}
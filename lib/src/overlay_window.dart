@@ -1,7 +1,14 @@
 import 'dart:async';
+import 'dart:convert';
 import 'dart:developer';
+import 'dart:typed_data';
+import 'dart:ui' show PlatformDispatcher, Rect;
 
+import 'package:flutter/animation.dart';
+import 'package:flutter/scheduler.dart';
+import 'package:flutter/widgets.dart' show WidgetsFlutterBinding;
 import 'package:flutter/services.dart';
+import 'package:flutter_overlay_window/src/models/overlay_geometry.dart';
 import 'package:flutter_overlay_window/src/models/overlay_position.dart';
 import 'package:flutter_overlay_window/src/overlay_config.dart';
 
@@ -10,14 +17,77 @@ class FlutterOverlayWindow {
 
   static final StreamController _controller = StreamController();
   static const MethodChannel _channel =
-      MethodChannel("x-slayer/overlay_channel");
+      MethodChannel("flutter.overlay.window/channel");
   static const MethodChannel _overlayChannel =
-      MethodChannel("x-slayer/overlay");
+      MethodChannel("flutter.overlay.window/overlay");
   static const BasicMessageChannel _overlayMessageChannel =
-      BasicMessageChannel("x-slayer/overlay_messenger", JSONMessageCodec());
+      BasicMessageChannel(
+          "flutter.overlay.window/messenger", JSONMessageCodec());
+  static const BasicMessageChannel _overlayStandardMessageChannel =
+      BasicMessageChannel("flutter.overlay.window/messenger/standard",
+          StandardMessageCodec());
+  static const BasicMessageChannel<ByteData> _overlayBinaryMessageChannel =
+      BasicMessageChannel("flutter.overlay.window/messenger/binary",
+          BinaryCodec());
+  static const BasicMessageChannel<ByteData> _overlayEnvelopeMessageChannel =
+      BasicMessageChannel("flutter.overlay.window/messenger/envelope",
+          BinaryCodec());
+  static const BasicMessageChannel<ByteData> _overlayBatchMessageChannel =
+      BasicMessageChannel("flutter.overlay.window/messenger/batch",
+          BinaryCodec());
+
+  /// Binary protocol for the calls made many times per second; see
+  /// `OverlayControl.java` for the format
+  static const BasicMessageChannel<ByteData> _controlChannel =
+      BasicMessageChannel("flutter.overlay.window/control", BinaryCodec());
+  static const int _opMove = 1;
+  static const int _opResize = 2;
+  static const int _opGetPosition = 3;
+  static const int _controlFlagSelf = 1;
+  static const int _statusOk = 1;
+  static final Map<String, Uint8List> _encodedOverlayIds = {};
+
+  /// Shared buffer registry; see `SharedBuffers.java` for the format
+  static const BasicMessageChannel<ByteData> _buffersChannel =
+      BasicMessageChannel("flutter.overlay.window/buffers", BinaryCodec());
+  static const int _opPublishBuffer = 1;
+  static const int _opReadBuffer = 2;
+  static const int _opRetainBuffer = 3;
+  static const int _opReleaseBuffer = 4;
+  static final Uint8List _noOverlayId = Uint8List(0);
+
+  /// Codec each overlay was shown with, by overlay id; the default overlay is
+  /// under [_defaultOverlayId] (`WindowSetup.DEFAULT_ID` on the native side)
+  static final Map<String, OverlayMessageCodec> _messengerCodecs = {};
+  static const String _defaultOverlayId = 'default';
+
+  /// Codec of the overlay this isolate runs in, asked from the native side
+  static OverlayMessageCodec? _ownMessengerCodec;
+  static bool _reportingFrameTimings = false;
+  static StreamController<OverlayGeometry>? _geometryController;
+
+  /// Called by the plugin registrant in every isolate, before its entrypoint
+  /// runs, so overlays report when their Dart code started and their frame
+  /// timings without having to call anything themselves
+  static void registerWith() {
+    // No binding exists yet, so this goes straight through the dispatcher.
+    PlatformDispatcher.instance.sendPlatformMessage(_channel.name,
+        _channel.codec.encodeMethodCall(const MethodCall('overlayStarted')),
+        (ByteData? reply) {
+      if (reply == null) return;
+      try {
+        if (_channel.codec.decodeEnvelope(reply) == true) _reportFrameTimings();
+      } on PlatformException catch (error) {
+        log("overlayStarted: $error");
+      }
+    });
+  }
 
   /// Open overLay content
   ///
+  /// The future completes once the overlay window is shown. Window calls made
+  /// before that (move, resize, close...) are applied after it, in order
+  ///
   /// - Optional arguments:
   ///
   /// `height` the overlay height and default is [WindowSize.fullCover]
@@ -34,11 +104,29 @@ class FlutterOverlayWindow {
   ///
   /// `overlayContent` the notification message
   ///
+  /// `notificationUpdateInterval` the minimum time between two notification updates;
+  /// faster updates are coalesced to the latest text. Default is [Duration.zero]
+  ///
   /// `enableDrag` to enable/disable dragging the overlay over the screen and default is "false"
   ///
   /// `positionGravity` the overlay postion after drag and default is [PositionGravity.none]
   ///
   /// `startPosition` the overlay start position and default is null
+  ///
+  /// `messengerCodec` the codec used by [shareData] and default is [OverlayMessageCodec.json]
+  ///
+  /// `renderMode` the surface the overlay is rendered into and default is [OverlayRenderMode.texture]
+  ///
+  /// `opaque` whether the overlay content covers its whole window, used by
+  /// [OverlayRenderMode.auto] and default is "false"
+  ///
+  /// `overlayId` identifies the overlay; each id gets its own window and engine, so
+  /// several overlays can be shown at once. Default is the single default overlay
+  ///
+  /// `fitContent` shrinks the window to the bounds the overlay reports with
+  /// [OverlayContentBounds] (or [updateContentBounds]) instead of keeping a
+  /// `height` x `width` window, so a small bubble doesn't composite a screen-sized
+  /// layer every frame. Default is "false"
   static Future<void> showOverlay({
     int height = WindowSize.fullCover,
     int width = WindowSize.matchParent,
@@ -47,10 +135,17 @@ class FlutterOverlayWindow {
     OverlayFlag flag = OverlayFlag.defaultFlag,
     String overlayTitle = "overlay activated",
     String? overlayContent,
+    Duration notificationUpdateInterval = Duration.zero,
     bool enableDrag = false,
     PositionGravity positionGravity = PositionGravity.none,
     OverlayPosition? startPosition,
+    OverlayMessageCodec messengerCodec = OverlayMessageCodec.json,
+    OverlayRenderMode renderMode = OverlayRenderMode.texture,
+    bool opaque = false,
+    String? overlayId,
+    bool fitContent = false,
   }) async {
+    _messengerCodecs[overlayId ?? _defaultOverlayId] = messengerCodec;
     await _channel.invokeMethod(
       'showOverlay',
       {
@@ -62,8 +157,14 @@ class FlutterOverlayWindow {
         "overlayContent": overlayContent,
         "enableDrag": enableDrag,
         "notificationVisibility": visibility.name,
+        "notificationMinIntervalMs": notificationUpdateInterval.inMilliseconds,
         "positionGravity": positionGravity.name,
         "startPosition": startPosition?.toMap(),
+        "messengerCodec": messengerCodec.name,
+        "renderMode": renderMode.name,
+        "opaque": opaque,
+        "overlayId": overlayId,
+        "fitContent": fitContent,
       },
     );
   }
@@ -90,25 +191,274 @@ class FlutterOverlayWindow {
   }
 
   /// Closes overlay if open
-  static Future<bool?> closeOverlay() async {
-    final bool? _res = await _channel.invokeMethod('closeOverlay');
+  ///
+  /// `overlayId` closes only that overlay; without it every overlay is closed
+  static Future<bool?> closeOverlay({String? overlayId}) async {
+    final bool? _res = await _channel.invokeMethod(
+      'closeOverlay',
+      overlayId == null ? null : {'overlayId': overlayId},
+    );
     return _res;
   }
 
   /// Broadcast data to and from overlay app
-  static Future shareData(dynamic data) async {
-    return await _overlayMessageChannel.send(data);
+  ///
+  /// With [OverlayMessageCodec.binary] `data` must be a [ByteData].
+  ///
+  /// `key` tags the message so that, with [OverlayMessageOverflow.coalesceByKey],
+  /// a newer message with the same key replaces one still waiting for the overlay.
+  ///
+  /// `overlayId` the overlay that receives data sent from the main app. Data
+  /// sent from an overlay always goes to the main app.
+  ///
+  /// `ttl` how long the message may wait while the other side isn't listening
+  /// before it is dropped; defaults to the `ttl` of [configureMessageQueue].
+  /// A dropped message completes with null.
+  static Future shareData(dynamic data,
+      {String? key, String? overlayId, Duration? ttl}) async {
+    // The main app picks the target overlay's codec; an overlay uses its own.
+    final codec = _messengerCodecs[overlayId ?? _defaultOverlayId] ??
+        (_ownMessengerCodec ??= await _resolveMessengerCodec());
+    if (key != null || overlayId != null || ttl != null) {
+      return await _sendEnvelope(
+          codec, overlayId ?? '', key ?? '', ttl, data);
+    }
+    switch (codec) {
+      case OverlayMessageCodec.standard:
+        return await _overlayStandardMessageChannel.send(data);
+      case OverlayMessageCodec.binary:
+        return await _overlayBinaryMessageChannel.send(data as ByteData?);
+      case OverlayMessageCodec.json:
+      default:
+        return await _overlayMessageChannel.send(data);
+    }
+  }
+
+  static Future _sendEnvelope(OverlayMessageCodec codec, String overlayId,
+      String key, Duration? ttl, dynamic data) async {
+    final MessageCodec<dynamic> messageCodec = _messageCodecFor(codec);
+    final ByteData? payload = messageCodec.encodeMessage(data);
+    final List<int> idBytes = utf8.encode(overlayId);
+    final List<int> keyBytes = utf8.encode(key);
+    assert(idBytes.length <= 0xffff, 'overlayId is too long');
+    assert(keyBytes.length <= 0xffff, 'key is too long');
+    final int headerLength =
+        5 + idBytes.length + keyBytes.length + (ttl != null ? 4 : 0);
+    final Uint8List envelope =
+        Uint8List(headerLength + (payload?.lengthInBytes ?? 0));
+    int offset = 0;
+    // The high bit says a time to live follows the key.
+    envelope[offset++] = codec.index | (ttl != null ? 0x80 : 0);
+    for (final List<int> bytes in [idBytes, keyBytes]) {
+      envelope[offset++] = bytes.length & 0xff;
+      envelope[offset++] = bytes.length >> 8;
+      envelope.setRange(offset, offset + bytes.length, bytes);
+      offset += bytes.length;
+    }
+    if (ttl != null) {
+      ByteData.sublistView(envelope)
+          .setUint32(offset, ttl.inMilliseconds.clamp(0, 0x7fffffff), Endian.little);
+    }
+    if (payload != null) {
+      envelope.setRange(
+          headerLength,
+          envelope.length,
+          payload.buffer
+              .asUint8List(payload.offsetInBytes, payload.lengthInBytes));
+    }
+    final ByteData? reply = await _overlayEnvelopeMessageChannel
+        .send(ByteData.sublistView(envelope));
+    return messageCodec.decodeMessage(reply);
+  }
+
+  /// Publish bulky data (tiles, images, polylines) under `handle` so the other
+  /// engine can [readBuffer] it without encoding it into a [shareData] message.
+  /// Send the handle with [shareData] instead of the data.
+  ///
+  /// The buffer starts with one reference, held by the publisher, and is freed
+  /// once every reference is released with [releaseBuffer]. A reference an
+  /// overlay still holds on what it published is released when it closes.
+  ///
+  /// `return` false if `handle` is already published or the registry is full
+  static Future<bool> publishBuffer(String handle, ByteData data) async {
+    final ByteData request =
+        _bufferRequest(_opPublishBuffer, handle, data.lengthInBytes);
+    final int at = request.lengthInBytes - data.lengthInBytes;
+    request.buffer.asUint8List(request.offsetInBytes + at).setAll(0,
+        data.buffer.asUint8List(data.offsetInBytes, data.lengthInBytes));
+    return _controlStatus(await _buffersChannel.send(request));
+  }
+
+  /// Read a buffer published with [publishBuffer], or null if there is none.
+  static Future<ByteData?> readBuffer(String handle) {
+    return _buffersChannel.send(_bufferRequest(_opReadBuffer, handle, 0));
+  }
+
+  /// Take another reference on a published buffer, so it outlives the
+  /// publisher's [releaseBuffer]. Returns false if there is no such buffer.
+  static Future<bool> retainBuffer(String handle) async {
+    return _controlStatus(
+        await _buffersChannel.send(_bufferRequest(_opRetainBuffer, handle, 0)));
+  }
+
+  /// Drop a reference on a published buffer. Returns false if there is no
+  /// such buffer.
+  static Future<bool> releaseBuffer(String handle) async {
+    return _controlStatus(await _buffersChannel
+        .send(_bufferRequest(_opReleaseBuffer, handle, 0)));
+  }
+
+  static ByteData _bufferRequest(int op, String handle, int payloadBytes) {
+    final List<int> id = utf8.encode(handle);
+    assert(id.length <= 0xffff, 'handle is too long');
+    final ByteData request = ByteData(3 + id.length + payloadBytes);
+    request.setUint8(0, op);
+    request.setUint16(1, id.length, Endian.little);
+    request.buffer.asUint8List(3, id.length).setAll(0, id);
+    return request;
+  }
+
+  static MessageCodec<dynamic> _messageCodecFor(OverlayMessageCodec codec) {
+    switch (codec) {
+      case OverlayMessageCodec.standard:
+        return const StandardMessageCodec();
+      case OverlayMessageCodec.binary:
+        return const BinaryCodec();
+      case OverlayMessageCodec.json:
+      default:
+        return const JSONMessageCodec();
+    }
+  }
+
+  /// Set how many [shareData] messages are kept while the other side isn't
+  /// listening (the overlay is still starting up, or the main app's engine is
+  /// gone while the overlay keeps running), and what to drop once that limit is
+  /// reached.
+  ///
+  /// `ttl` how long a message may wait before it is dropped; null keeps it
+  /// until it is delivered or pushed out.
+  static Future<void> configureMessageQueue({
+    int capacity = 64,
+    OverlayMessageOverflow overflow = OverlayMessageOverflow.dropOldest,
+    Duration? ttl,
+  }) async {
+    await _channel.invokeMethod('configureMessenger', {
+      'capacity': capacity,
+      'overflow': overflow.name,
+      'ttlMs': ttl?.inMilliseconds ?? 0,
+    });
+  }
+
+  /// The overlay isolate didn't call [showOverlay], so ask the service which
+  /// codec the main app picked.
+  static Future<OverlayMessageCodec> _resolveMessengerCodec() async {
+    try {
+      final String? name =
+          await _overlayChannel.invokeMethod<String>('getMessengerCodec');
+      return OverlayMessageCodec.values.firstWhere(
+        (codec) => codec.name == name,
+        orElse: () => OverlayMessageCodec.json,
+      );
+    } on MissingPluginException {
+      return OverlayMessageCodec.json;
+    } on PlatformException {
+      return OverlayMessageCodec.json;
+    }
   }
 
   /// Streams message shared between overlay and main app
   static Stream<dynamic> get overlayListener {
-    _overlayMessageChannel.setMessageHandler((message) async {
+    Future<dynamic> handler(dynamic message) async {
+      _controller.add(message);
+      return message;
+    }
+
+    _overlayMessageChannel.setMessageHandler(handler);
+    _overlayStandardMessageChannel.setMessageHandler(handler);
+    _overlayBinaryMessageChannel.setMessageHandler((message) async {
       _controller.add(message);
       return message;
     });
+    _overlayBatchMessageChannel.setMessageHandler(_handleBatch);
+    // Lets the native relay deliver messages queued while this side wasn't listening.
+    _notifyMessengerReady();
     return _controller.stream;
   }
 
+  /// Messages that waited for this side to listen arrive in one batch:
+  /// `[u32 count]` then per message `[u8 codec][u32 length][payload]`, answered
+  /// with `[u32 count]` then per message `[u32 length][reply]`. A length of
+  /// 0xffffffff means null; everything is little-endian.
+  static Future<ByteData?> _handleBatch(ByteData? batch) async {
+    if (batch == null) return null;
+    const int nullLength = 0xffffffff;
+    final int count = batch.getUint32(0, Endian.little);
+    final List<ByteData?> replies = List.filled(count, null);
+    int offset = 4;
+    int replyLength = 4;
+    for (int i = 0; i < count; i++) {
+      final int codec = batch.getUint8(offset);
+      final int length = batch.getUint32(offset + 1, Endian.little);
+      offset += 5;
+      ByteData? payload;
+      if (length != nullLength) {
+        payload = ByteData.sublistView(batch, offset, offset + length);
+        offset += length;
+      }
+      final messageCodec = _messageCodecFor(OverlayMessageCodec.values[codec]);
+      final message = messageCodec.decodeMessage(payload);
+      _controller.add(message);
+      // Same as the single-message handlers, which echo what they received.
+      replies[i] = payload;
+      replyLength += 4 + (payload?.lengthInBytes ?? 0);
+    }
+    final Uint8List out = Uint8List(replyLength);
+    final ByteData view = ByteData.sublistView(out);
+    view.setUint32(0, count, Endian.little);
+    offset = 4;
+    for (final ByteData? reply in replies) {
+      if (reply == null) {
+        view.setUint32(offset, nullLength, Endian.little);
+        offset += 4;
+        continue;
+      }
+      view.setUint32(offset, reply.lengthInBytes, Endian.little);
+      offset += 4;
+      out.setRange(offset, offset + reply.lengthInBytes,
+          reply.buffer.asUint8List(reply.offsetInBytes, reply.lengthInBytes));
+      offset += reply.lengthInBytes;
+    }
+    return view;
+  }
+
+  static Future<void> _notifyMessengerReady() async {
+    try {
+      await _channel.invokeMethod<bool>('messengerReady');
+    } on PlatformException catch (error) {
+      log("messengerReady: $error");
+    }
+  }
+
+  /// Forwards the overlay engine's frame timings to the native metrics. The
+  /// engine already batches them, so this is at most about one call a second.
+  static void _reportFrameTimings() {
+    if (_reportingFrameTimings) return;
+    _reportingFrameTimings = true;
+    // The entrypoint may not have called runApp yet; it would do the same.
+    WidgetsFlutterBinding.ensureInitialized().addTimingsCallback((List<FrameTiming> timings) {
+      final Int64List build = Int64List(timings.length);
+      final Int64List raster = Int64List(timings.length);
+      for (int i = 0; i < timings.length; i++) {
+        build[i] = timings[i].buildDuration.inMicroseconds;
+        raster[i] = timings[i].rasterDuration.inMicroseconds;
+      }
+      _channel.invokeMethod('reportFrameTimings', {
+        'buildUs': build,
+        'rasterUs': raster,
+      });
+    });
+  }
+
   /// Update the overlay flag while the overlay in action
   static Future<bool?> updateFlag(OverlayFlag flag) async {
     final bool? _res = await _overlayChannel
@@ -117,48 +467,353 @@ class FlutterOverlayWindow {
   }
 
   /// Update the overlay size in the screen
+  ///
+  /// `overlayId` resizes that overlay from the main app; without it the call
+  /// resizes the overlay it is made from
+  ///
+  /// `duration` animates the resize natively along `curve`; the future then
+  /// completes once it ends, with false if a drag or another animation
+  /// interrupted it
   static Future<bool?> resizeOverlay(
     int width,
     int height,
-    bool enableDrag,
-  ) async {
-    final bool? _res = await _overlayChannel.invokeMethod<bool?>(
+    bool enableDrag, {
+    String? overlayId,
+    Duration? duration,
+    Curve curve = Curves.easeInOut,
+  }) async {
+    if (duration == null) {
+      final ByteData request = _controlRequest(_opResize, overlayId, 9,
+          self: overlayId == null);
+      final int at = request.lengthInBytes - 9;
+      request.setInt32(at, width, Endian.little);
+      request.setInt32(at + 4, height, Endian.little);
+      request.setUint8(at + 8, enableDrag ? 1 : 0);
+      return _controlStatus(await _controlChannel.send(request));
+    }
+    final bool? _res =
+        await (overlayId == null ? _overlayChannel : _channel).invokeMethod<bool?>(
       'resizeOverlay',
       {
         'width': width,
         'height': height,
         'enableDrag': enableDrag,
+        'overlayId': overlayId,
+        if (duration != null) 'duration': duration.inMilliseconds,
+        if (duration != null) 'curve': _sampleCurve(curve),
       },
     );
     return _res;
   }
 
+  /// Header of a control request followed by `fieldBytes` of fields; `self`
+  /// makes a missing `overlayId` target the overlay the call is made from
+  static ByteData _controlRequest(int op, String? overlayId, int fieldBytes,
+      {bool self = false}) {
+    final Uint8List id = overlayId == null
+        ? _noOverlayId
+        : _encodedOverlayIds.putIfAbsent(
+            overlayId, () => Uint8List.fromList(utf8.encode(overlayId)));
+    final ByteData request = ByteData(4 + id.length + fieldBytes);
+    request.setUint8(0, op);
+    request.setUint8(1, self ? _controlFlagSelf : 0);
+    request.setUint16(2, id.length, Endian.little);
+    request.buffer.asUint8List(4, id.length).setAll(0, id);
+    return request;
+  }
+
+  static bool _controlStatus(ByteData? reply) =>
+      reply != null && reply.lengthInBytes > 0 && reply.getUint8(0) == _statusOk;
+
+  /// Curves can't cross the channel, so the native animator follows samples of it.
+  static Float64List _sampleCurve(Curve curve) {
+    const int samples = 48;
+    final Float64List values = Float64List(samples + 1);
+    for (int i = 0; i <= samples; i++) {
+      values[i] = curve.transform(i / samples);
+    }
+    return values;
+  }
+
+  /// Change several window properties in one layout pass
+  ///
+  /// Only the given values change: `position` and `width`/`height` in dp (with
+  /// [WindowSize] constants), `alignment`, `flag`, `alpha` (capped to 0.8 on
+  /// Android 12+) and `enableDrag`. Use it instead of successive [moveOverlay],
+  /// [resizeOverlay] and [updateFlag] calls, which relayout the window one by one
+  ///
+  /// `overlayId` changes that overlay from the main app; without it the call
+  /// changes the overlay it is made from
+  ///
+  /// `return` the resulting `x`, `y`, `width`, `height`, `alpha` and
+  /// `enableDrag`, or null if the overlay isn't shown
+  static Future<Map<String, dynamic>?> applyOverlayTransaction({
+    OverlayPosition? position,
+    int? width,
+    int? height,
+    OverlayAlignment? alignment,
+    OverlayFlag? flag,
+    double? alpha,
+    bool? enableDrag,
+    String? overlayId,
+  }) async {
+    final Map<Object?, Object?>? _res =
+        await (overlayId == null ? _overlayChannel : _channel).invokeMethod(
+      overlayId == null ? 'applyTransaction' : 'applyOverlayTransaction',
+      {
+        if (position != null) ...position.toMap(),
+        if (width != null) 'width': width,
+        if (height != null) 'height': height,
+        if (alignment != null) 'alignment': alignment.name,
+        if (flag != null) 'flag': flag.name,
+        if (alpha != null) 'alpha': alpha,
+        if (enableDrag != null) 'enableDrag': enableDrag,
+        'overlayId': overlayId,
+      },
+    );
+    return _res == null ? null : Map<String, dynamic>.from(_res);
+  }
+
+  /// Report the bounds of the overlay content, in logical pixels relative to
+  /// the overlay window. Only used when the overlay was shown with
+  /// `fitContent`; the window is resized to `bounds` on the next frame and
+  /// several reports within one frame are merged
+  ///
+  /// Lay the content out at the top left of whatever space it gets, so once
+  /// the window fits it the reported bounds stop changing. [OverlayContentBounds]
+  /// calls this for you
+  ///
+  /// `return` false if the overlay doesn't fit its content
+  static Future<bool?> updateContentBounds(Rect bounds) async {
+    final bool? _res = await _overlayChannel.invokeMethod<bool?>(
+      'setContentBounds',
+      {
+        'left': bounds.left,
+        'top': bounds.top,
+        'width': bounds.width,
+        'height': bounds.height,
+      },
+    );
+    return _res;
+  }
+
+  /// Switch the render surface of a running overlay
+  ///
+  /// The view is only rebuilt when the resolved surface changes
+  ///
+  /// `overlayId` switches that overlay from the main app; without it the call
+  /// switches the overlay it is made from
+  ///
+  /// `return` true if the view was rebuilt
+  static Future<bool?> setRenderMode(
+    OverlayRenderMode renderMode, {
+    bool opaque = false,
+    String? overlayId,
+  }) async {
+    final bool? _res =
+        await (overlayId == null ? _overlayChannel : _channel).invokeMethod<bool?>(
+      'setRenderMode',
+      {
+        'renderMode': renderMode.name,
+        'opaque': opaque,
+        'overlayId': overlayId,
+      },
+    );
+    return _res;
+  }
+
+  /// Hide the overlay without closing it
+  ///
+  /// The window stays attached but is fully transparent and lets touches
+  /// through, and its engine is paused, so [unhideOverlay] brings it back in
+  /// a few milliseconds instead of rebuilding the service, window and view
+  ///
+  /// `overlayId` the overlay to hide, default is the default overlay
+  ///
+  /// `return` false if the overlay isn't shown
+  static Future<bool?> hideOverlay({String? overlayId}) async {
+    final bool? _res = await _channel.invokeMethod<bool?>(
+      'hideOverlay',
+      {'overlayId': overlayId},
+    );
+    return _res;
+  }
+
+  /// Show an overlay hidden with [hideOverlay] again, where it was
+  ///
+  /// `overlayId` the overlay to unhide, default is the default overlay
+  ///
+  /// `return` false if the overlay isn't shown
+  static Future<bool?> unhideOverlay({String? overlayId}) async {
+    final bool? _res = await _channel.invokeMethod<bool?>(
+      'unhideOverlay',
+      {'overlayId': overlayId},
+    );
+    return _res;
+  }
+
   /// Update the overlay position in the screen
   ///
   /// `position` the new position of the overlay
   ///
-  /// `return` true if the position updated successfully
-  static Future<bool?> moveOverlay(OverlayPosition position) async {
+  /// `overlayId` the overlay to move, default is the default overlay
+  ///
+  /// `duration` animates the move natively along `curve` instead of calling
+  /// this once per frame; the future then completes once it ends
+  ///
+  /// `return` true if the position updated successfully, false if the overlay
+  /// isn't shown or a drag or another animation interrupted the move
+  static Future<bool?> moveOverlay(
+    OverlayPosition position, {
+    String? overlayId,
+    Duration? duration,
+    Curve curve = Curves.easeInOut,
+  }) async {
+    if (duration == null) {
+      final ByteData request = _controlRequest(_opMove, overlayId, 8);
+      final int at = request.lengthInBytes - 8;
+      request.setInt32(at, position.x.toInt(), Endian.little);
+      request.setInt32(at + 4, position.y.toInt(), Endian.little);
+      return _controlStatus(await _controlChannel.send(request));
+    }
     final bool? _res = await _channel.invokeMethod<bool?>(
       'moveOverlay',
-      position.toMap(),
+      {
+        ...position.toMap(),
+        'overlayId': overlayId,
+        if (duration != null) 'duration': duration.inMilliseconds,
+        if (duration != null) 'curve': _sampleCurve(curve),
+      },
     );
     return _res;
   }
 
+  /// Streams the window geometry of the overlays, so the last dock position
+  /// can be tracked without polling [getOverlayPosition]
+  ///
+  /// Events come on drag, snap, resize, moves and rotation. While a window is
+  /// moving they are limited to one per `minInterval`; the position it comes
+  /// to rest at is always sent, with [OverlayGeometry.moving] false
+  static Stream<OverlayGeometry> overlayGeometry({
+    Duration minInterval = const Duration(milliseconds: 100),
+  }) {
+    final controller = _geometryController ??=
+        StreamController<OverlayGeometry>.broadcast(
+      onCancel: () {
+        _channel.invokeMethod('cancelGeometry');
+      },
+    );
+    _channel.setMethodCallHandler((call) async {
+      if (call.method == 'onOverlayGeometry') {
+        controller.add(OverlayGeometry.fromMap(
+            call.arguments as Map<Object?, Object?>));
+      }
+    });
+    _channel.invokeMethod(
+        'listenGeometry', {'minIntervalMs': minInterval.inMilliseconds});
+    return controller.stream;
+  }
+
   /// Get the current overlay position
   ///
+  /// `overlayId` the overlay to query, default is the default overlay
+  ///
   /// `return` the current overlay position
-  static Future<OverlayPosition> getOverlayPosition() async {
-    final Map<Object?, Object?>? _res = await _channel.invokeMethod(
-      'getOverlayPosition',
+  static Future<OverlayPosition> getOverlayPosition({String? overlayId}) async {
+    final ByteData? reply = await _controlChannel
+        .send(_controlRequest(_opGetPosition, overlayId, 0));
+    if (!_controlStatus(reply) || reply!.lengthInBytes < 17) {
+      return const OverlayPosition(0, 0);
+    }
+    return OverlayPosition(
+      reply.getFloat64(1, Endian.little),
+      reply.getFloat64(9, Endian.little),
     );
-    return OverlayPosition.fromMap(_res);
+  }
+
+  /// Get the id of the overlay this code runs in
+  ///
+  /// Every overlay runs the same `overlayMain` entry point, so use this to
+  /// decide what to render. Returns null when called from the main app
+  static Future<String?> getOverlayId() async {
+    try {
+      return await _overlayChannel.invokeMethod<String>('getOverlayId');
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Configure how overlay engines are managed
+  ///
+  /// `keepStandby` keeps one extra overlay engine warm so the next overlay
+  /// engine can be used without waiting for it to start, at the cost of its memory
+  ///
+  /// `prewarm` when the overlay engine is started on app launch. It is saved and
+  /// takes effect from the next launch; default stays [OverlayEnginePrewarm.eager]
+  ///
+  /// `prewarmDelay` the delay used by [OverlayEnginePrewarm.delayed]
+  static Future<void> configureEngine({
+    bool keepStandby = false,
+    OverlayEnginePrewarm? prewarm,
+    Duration prewarmDelay = const Duration(seconds: 3),
+  }) async {
+    await _channel.invokeMethod('configureEngine', {
+      'keepStandby': keepStandby,
+      'prewarm': prewarm?.name,
+      'prewarmDelayMs': prewarmDelay.inMilliseconds,
+    });
+  }
+
+  /// Get overlay engine statistics
+  ///
+  /// `return` spawn count, last spawn time in ms, approximate native memory of
+  /// the last spawned engine in bytes, standby engine usage,
+  /// `lastShowToFirstFrameMs` of any overlay and, in `timelines`, the startup
+  /// timeline of each live engine by overlay id (`engineCreateStartedAt`,
+  /// `engineCreatedAt`, `dartStartedAt`, `firstFrameAt` as milliseconds since
+  /// boot, and its own `lastShowToFirstFrameMs`)
+  static Future<Map<String, dynamic>> getEngineStats() async {
+    final Map<Object?, Object?>? _res =
+        await _channel.invokeMethod('getEngineStats');
+    return Map<String, dynamic>.from(_res ?? const {});
+  }
+
+  /// Get runtime metrics of the overlays
+  ///
+  /// `return` histograms (`count`, `avg`, `p50`, `p90`, `p99`, `max`) of
+  /// `frameBuildUs` and `frameRasterUs` of the overlay engine, `layoutUpdateUs`
+  /// (window layout updates), `messageRoundTripUs` ([shareData] send to reply)
+  /// and `showToFirstFrameMs`, plus `drag`, `messages`, `sharedBuffers`
+  /// (`count` and `bytes` held, `published`, `reads`), `engine` (see
+  /// [getEngineStats]) and per-overlay `overlays` counters
+  ///
+  /// `reset` clears the counters after reading them, so each call reports the
+  /// interval since the previous one
+  static Future<Map<String, dynamic>> getOverlayMetrics({bool reset = false}) async {
+    final Map<Object?, Object?>? _res =
+        await _channel.invokeMethod('getOverlayMetrics', {'reset': reset});
+    return Map<String, dynamic>.from(_res ?? const {});
+  }
+
+  /// Periodically emits [getOverlayMetrics] while listened to
+  ///
+  /// `reset` makes each event cover only the last `interval`
+  static Stream<Map<String, dynamic>> overlayMetrics({
+    Duration interval = const Duration(seconds: 10),
+    bool reset = false,
+  }) {
+    return Stream<void>.periodic(interval)
+        .asyncMap((_) => getOverlayMetrics(reset: reset));
   }
 
   /// Check if the current overlay is active
-  static Future<bool> isActive() async {
-    final bool? _res = await _channel.invokeMethod<bool?>('isOverlayActive');
+  ///
+  /// `overlayId` checks that overlay; without it checks if any overlay is active
+  static Future<bool> isActive({String? overlayId}) async {
+    final bool? _res = await _channel.invokeMethod<bool?>(
+      'isOverlayActive',
+      overlayId == null ? null : {'overlayId': overlayId},
+    );
     return _res ?? false;
   }
 